@@ -0,0 +1,103 @@
+package com.maciejwalkowiak.jpartitioner.core;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link PartitionRepository} keeping partitions in memory, so that benchmarks measure only the partition model.
+ *
+ * @author Maciej Walkowiak
+ */
+class InMemoryPartitionRepository implements PartitionRepository {
+    private final Map<String, List<Partition>> partitions = new ConcurrentHashMap<>();
+
+    void setPartitions(String tableName, List<Partition> partitions) {
+        this.partitions.put(tableName, new ArrayList<>(partitions));
+    }
+
+    @Override
+    public List<Partition> findPartitions(String tableName) {
+        return partitions.getOrDefault(tableName, List.of());
+    }
+
+    @Override
+    public void detachPartitions(List<Partition> partitions) {
+    }
+
+    @Override
+    public void dropPartitions(List<Partition> partitions) {
+    }
+
+    @Override
+    public void createPartitions(List<Partition> partitions) {
+    }
+
+    @Override
+    public void createDetachedPartitions(List<Partition> partitions, boolean copyIndexes) {
+    }
+
+    @Override
+    public void attachPartitions(List<Partition> partitions) {
+    }
+
+    @Override
+    public void createDefaultPartition(String parentTableName) {
+    }
+
+    @Override
+    public long countDefaultPartitionPages(String parentTableName) {
+        return 0;
+    }
+
+    @Override
+    public int moveRowsFromDefaultPartition(Partition partition, long firstPage, int pages) {
+        return 0;
+    }
+
+    @Override
+    public void excludeFromDefaultPartition(Partition partition) {
+    }
+
+    @Override
+    public void attachPartitionFromDefault(Partition partition) {
+    }
+
+    @Override
+    public void archivePartitions(List<Partition> partitions, Path archiveDirectory) {
+    }
+
+    @Override
+    public void restorePartition(Partition partition, Path archiveDirectory) {
+    }
+
+    @Override
+    public List<PartitionEstimate> estimatePartitions(List<Partition> partitions, boolean exclusiveParentLock) {
+        return partitions.stream().map(it -> new PartitionEstimate(it, 0, 0, 0, false)).toList();
+    }
+
+    @Override
+    public boolean moveToTablespace(Partition partition, String tablespace) {
+        return false;
+    }
+
+    @Override
+    public void createIndexes(Partition partition, List<IndexTemplate> indexTemplates) {
+    }
+
+    @Override
+    public List<Partition> findPartitionsToAnalyze(List<Partition> partitions, double threshold) {
+        return List.of();
+    }
+
+    @Override
+    public void analyze(String tableName) {
+    }
+
+    @Override
+    public boolean analyzeParent(String parentTableName) {
+        return false;
+    }
+}
@@ -0,0 +1,58 @@
+package com.maciejwalkowiak.jpartitioner.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of parsing, naming and resolving bounds of a single {@link Partition}.
+ *
+ * @author Maciej Walkowiak
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PartitionBenchmark {
+    private final LocalDate date = LocalDate.of(2024, 2, 10);
+    private final Partition daily = Partition.of("events_20240210");
+    private final Partition monthly = Partition.of("events_202402");
+
+    @Benchmark
+    public Partition parseDailyName() {
+        return Partition.of("events_20240210");
+    }
+
+    @Benchmark
+    public Partition parseMonthlyName() {
+        return Partition.of("events_202402");
+    }
+
+    @Benchmark
+    public Partition nameDailyPartition() {
+        return Partition.of("events", RangeType.DAILY, date);
+    }
+
+    @Benchmark
+    public Partition nameMonthlyPartition() {
+        return Partition.of("events", RangeType.MONTHLY, date);
+    }
+
+    @Benchmark
+    public void resolveDailyBounds(Blackhole blackhole) {
+        blackhole.consume(daily.start());
+        blackhole.consume(daily.end());
+    }
+
+    @Benchmark
+    public void resolveMonthlyBounds(Blackhole blackhole) {
+        blackhole.consume(monthly.start());
+        blackhole.consume(monthly.end());
+    }
+}
@@ -0,0 +1,64 @@
+package com.maciejwalkowiak.jpartitioner.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of generating expected partitions and computing a changeset for a table with a given number of
+ * partitions. Existing partitions are shifted by a tenth of their count, so that the changeset is not empty.
+ *
+ * @author Maciej Walkowiak
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PartitionsBenchmark {
+    private static final LocalDateTime DATE = LocalDateTime.of(2024, 2, 10, 0, 0);
+
+    @Param({"10", "1000", "100000"})
+    private int partitionCount;
+
+    private PartitionConfig config;
+    private List<Partition> existingPartitions;
+    private List<Partition> expectedPartitions;
+    private Partitions partitions;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        config = PartitionConfig.forTable("events")
+                .retention(partitionCount / 2, RetentionPolicy.DROP)
+                .buffer(partitionCount / 2);
+        existingPartitions = Partitions.expectedPartitions(config, DATE.minusDays(partitionCount / 10));
+        expectedPartitions = Partitions.expectedPartitions(config, DATE);
+
+        InMemoryPartitionRepository repository = new InMemoryPartitionRepository();
+        repository.setPartitions(config.tableName(), existingPartitions);
+        partitions = new Partitions(repository);
+    }
+
+    @Benchmark
+    public List<Partition> expectedPartitions() {
+        return Partitions.expectedPartitions(config, DATE);
+    }
+
+    @Benchmark
+    public Partitions.PartitionChangeset diff() {
+        return Partitions.diff(existingPartitions, expectedPartitions);
+    }
+
+    @Benchmark
+    public RefreshResult refresh() {
+        return partitions.refresh(DATE, config);
+    }
+}
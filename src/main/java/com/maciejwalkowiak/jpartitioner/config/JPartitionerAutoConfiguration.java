@@ -0,0 +1,81 @@
+package com.maciejwalkowiak.jpartitioner.config;
+
+import com.maciejwalkowiak.jpartitioner.core.JdbcPartitionRepository;
+import com.maciejwalkowiak.jpartitioner.core.PartitionRefreshScheduler;
+import com.maciejwalkowiak.jpartitioner.core.Partitions;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.actuate.autoconfigure.health.ConditionalOnEnabledHealthIndicator;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnSingleCandidate;
+import org.springframework.boot.autoconfigure.jdbc.JdbcTemplateAutoConfiguration;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Auto-configuration of partition management for tables configured with {@link JPartitionerProperties}. Partitions
+ * are refreshed in the background by {@link PartitionRefreshScheduler} started once the application is ready, so that
+ * application startup does not wait for partition DDL.
+ *
+ * @author Maciej Walkowiak
+ */
+@AutoConfiguration(after = JdbcTemplateAutoConfiguration.class)
+@ConditionalOnClass(JdbcTemplate.class)
+@ConditionalOnSingleCandidate(JdbcTemplate.class)
+@EnableConfigurationProperties(JPartitionerProperties.class)
+public class JPartitionerAutoConfiguration {
+
+    @Bean
+    @ConditionalOnMissingBean
+    JdbcPartitionRepository jdbcPartitionRepository(JdbcTemplate jdbcTemplate) {
+        return new JdbcPartitionRepository(jdbcTemplate);
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    Partitions partitions(JdbcPartitionRepository jdbcPartitionRepository, ObjectProvider<MeterRegistry> meterRegistry) {
+        Partitions partitions = new Partitions(jdbcPartitionRepository);
+        meterRegistry.ifAvailable(partitions::meterRegistry);
+        return partitions;
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = "jpartitioner.refresh", name = "enabled", havingValue = "true", matchIfMissing = true)
+    PartitionRefreshScheduler partitionRefreshScheduler(Partitions partitions, JdbcTemplate jdbcTemplate, JPartitionerProperties properties) {
+        return new PartitionRefreshScheduler(partitions, jdbcTemplate, properties.partitionConfigs())
+                .interval(properties.refresh().interval())
+                .lockScope(properties.refresh().lockScope())
+                .deadlineDriven(properties.refresh().deadlineDriven());
+    }
+
+    @Bean
+    ApplicationListener<ApplicationReadyEvent> partitionRefreshSchedulerStarter(ObjectProvider<PartitionRefreshScheduler> partitionRefreshScheduler, JPartitionerProperties properties) {
+        // the first refresh runs on the scheduler thread, not on the thread publishing the event
+        return event -> {
+            if (!properties.tables().isEmpty()) {
+                partitionRefreshScheduler.ifAvailable(PartitionRefreshScheduler::start);
+            }
+        };
+    }
+
+    @Configuration(proxyBeanMethods = false)
+    @ConditionalOnClass(HealthIndicator.class)
+    static class PartitionsHealthConfiguration {
+
+        @Bean
+        @ConditionalOnMissingBean
+        @ConditionalOnEnabledHealthIndicator("partitions")
+        PartitionsHealthIndicator partitionsHealthIndicator(JdbcPartitionRepository jdbcPartitionRepository, JPartitionerProperties properties) {
+            return new PartitionsHealthIndicator(jdbcPartitionRepository, properties.partitionConfigs(), properties.minHeadroom());
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.maciejwalkowiak.jpartitioner.config;
+
+import com.maciejwalkowiak.jpartitioner.core.PartitionConfig;
+import com.maciejwalkowiak.jpartitioner.core.PartitionCreationMode;
+import com.maciejwalkowiak.jpartitioner.core.PartitionRefreshScheduler;
+import com.maciejwalkowiak.jpartitioner.core.RangeType;
+import com.maciejwalkowiak.jpartitioner.core.RetentionPolicy;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Configuration properties of partitioned tables, for example:
+ * <pre>
+ * jpartitioner.tables[0].name=events
+ * jpartitioner.tables[0].range-type=daily
+ * jpartitioner.tables[0].retention=7
+ * jpartitioner.tables[0].retention-policy=drop
+ * jpartitioner.tables[0].buffer=3
+ * </pre>
+ *
+ * @author Maciej Walkowiak
+ * @param tables - partitioned tables
+ * @param refresh - background refresh of partitioned tables
+ * @param minHeadroom - how many future partitions beyond the current one must exist for the health indicator to report UP
+ */
+@ConfigurationProperties("jpartitioner")
+public record JPartitionerProperties(@DefaultValue List<Table> tables, @DefaultValue Refresh refresh, @DefaultValue("1") int minHeadroom) {
+
+    /**
+     * Returns partition configs of all configured tables.
+     *
+     * @return partition configs
+     */
+    public List<PartitionConfig> partitionConfigs() {
+        return tables.stream().map(Table::toPartitionConfig).toList();
+    }
+
+    /**
+     * Partitioned table.
+     *
+     * @param name - parent table name
+     * @param rangeType - time range covered by a single partition
+     * @param retention - how many past partitions are kept
+     * @param retentionPolicy - what to do with partitions older than retention
+     * @param archiveDirectory - directory to archive partitions to, required with {@link RetentionPolicy#ARCHIVE}
+     * @param buffer - how many partitions, including the current one, are created upfront
+     * @param creationMode - how new partitions are created
+     */
+    public record Table(String name,
+                        @DefaultValue("DAILY") RangeType rangeType,
+                        @DefaultValue("7") int retention,
+                        @DefaultValue("DETACH") RetentionPolicy retentionPolicy,
+                        Path archiveDirectory,
+                        @DefaultValue("1") int buffer,
+                        @DefaultValue("PARTITION_OF") PartitionCreationMode creationMode) {
+
+        PartitionConfig toPartitionConfig() {
+            PartitionConfig config = PartitionConfig.forTable(name)
+                    .rangeType(rangeType)
+                    .buffer(buffer)
+                    .creationMode(creationMode);
+            return retentionPolicy == RetentionPolicy.ARCHIVE
+                    ? config.archive(retention, archiveDirectory)
+                    : config.retention(retention, retentionPolicy);
+        }
+    }
+
+    /**
+     * Background refresh with {@link PartitionRefreshScheduler}, started once the application is ready.
+     *
+     * @param enabled - if partitions are refreshed in the background
+     * @param interval - delay between the end of a refresh and the start of the next one
+     * @param lockScope - what is guarded by an advisory lock
+     * @param deadlineDriven - if partitions are refreshed at range boundaries instead of every interval
+     */
+    public record Refresh(@DefaultValue("true") boolean enabled,
+                          @DefaultValue("1h") Duration interval,
+                          @DefaultValue("GLOBAL") PartitionRefreshScheduler.LockScope lockScope,
+                          @DefaultValue("false") boolean deadlineDriven) {
+    }
+}
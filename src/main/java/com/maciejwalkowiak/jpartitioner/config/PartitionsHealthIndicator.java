@@ -0,0 +1,63 @@
+package com.maciejwalkowiak.jpartitioner.config;
+
+import com.maciejwalkowiak.jpartitioner.core.PartitionConfig;
+import com.maciejwalkowiak.jpartitioner.core.PartitionRepository;
+import org.springframework.boot.actuate.health.AbstractHealthIndicator;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.util.Assert;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Reports UP when every configured table has a partition for the current time and enough future partitions, so that
+ * inserts do not fail once the current partition ends. Until the first background refresh creates partitions of a new
+ * table, the indicator reports DOWN - meant to be included in the readiness health group:
+ * <pre>
+ * management.endpoint.health.group.readiness.include=readinessState,partitions
+ * </pre>
+ *
+ * @author Maciej Walkowiak
+ */
+public class PartitionsHealthIndicator extends AbstractHealthIndicator {
+    private final PartitionRepository partitionRepository;
+    private final List<PartitionConfig> configs;
+    private final int minHeadroom;
+
+    /**
+     * Creates a health indicator.
+     *
+     * @param partitionRepository - partition repository
+     * @param configs - configs of tables to check
+     * @param minHeadroom - how many future partitions beyond the current one must exist, capped by the buffer of a table
+     */
+    public PartitionsHealthIndicator(PartitionRepository partitionRepository, List<PartitionConfig> configs, int minHeadroom) {
+        super("Failed to check partitions headroom");
+        Assert.notNull(partitionRepository, "partitionRepository must not be null");
+        Assert.notNull(configs, "configs must not be null");
+        Assert.isTrue(minHeadroom >= 0, "minHeadroom must not be negative");
+        this.partitionRepository = partitionRepository;
+        this.configs = List.copyOf(configs);
+        this.minHeadroom = minHeadroom;
+    }
+
+    @Override
+    protected void doHealthCheck(Health.Builder builder) {
+        LocalDateTime now = LocalDateTime.now();
+        boolean up = true;
+        // table name -> partitions ending after now, including the current one
+        Map<String, Long> headroom = new TreeMap<>();
+        for (PartitionConfig config : configs) {
+            long partitionsAhead = partitionRepository.findPartitions(config.tableName()).stream()
+                    .filter(it -> it.end().isAfter(now))
+                    .count();
+            headroom.put(config.tableName(), partitionsAhead);
+            if (partitionsAhead < Math.min(config.buffer(), minHeadroom + 1)) {
+                up = false;
+            }
+        }
+        (up ? builder.up() : builder.down()).withDetail("headroom", headroom);
+    }
+}
@@ -0,0 +1,29 @@
+package com.maciejwalkowiak.jpartitioner.core;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Execution of DDL statements sent to the database in a single round-trip.
+ *
+ * @author Maciej Walkowiak
+ * @param statements - executed statements
+ * @param attempts - how many times statements were executed until they succeeded
+ * @param waitTime - time spent in failed attempts and in backoff between attempts
+ * @param duration - total execution time, including wait time
+ * @param failed - true if statements failed in the last attempt
+ */
+public record DdlExecution(List<String> statements, int attempts, Duration waitTime, Duration duration, boolean failed) {
+
+    /**
+     * Creates a successful execution.
+     *
+     * @param statements - executed statements
+     * @param attempts - how many times statements were executed until they succeeded
+     * @param waitTime - time spent in failed attempts and in backoff between attempts
+     * @param duration - total execution time, including wait time
+     */
+    public DdlExecution(List<String> statements, int attempts, Duration waitTime, Duration duration) {
+        this(statements, attempts, waitTime, duration, false);
+    }
+}
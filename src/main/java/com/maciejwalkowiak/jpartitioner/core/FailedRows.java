@@ -0,0 +1,15 @@
+package com.maciejwalkowiak.jpartitioner.core;
+
+import java.util.List;
+
+/**
+ * Rows that {@link PartitionIngester} failed to copy to a table. Rows are dropped from the ingester's buffer, so that
+ * a single invalid row does not prevent the following rows from being copied.
+ *
+ * @author Maciej Walkowiak
+ * @param tableName - name of the table rows were copied to
+ * @param rows - rows in {@code COPY} text format, one line per row
+ * @param exception - the reason of the failure
+ */
+public record FailedRows(String tableName, List<String> rows, RuntimeException exception) {
+}
@@ -0,0 +1,30 @@
+package com.maciejwalkowiak.jpartitioner.core;
+
+import org.springframework.util.Assert;
+
+/**
+ * Index built on every new partition before it is attached to the parent table. When the parent table has a matching
+ * partitioned index, attaching the partition only links the existing index instead of building it.
+ *
+ * @author Maciej Walkowiak
+ * @param suffix - suffix of index name, appended to partition name, for example {@code name_idx}
+ * @param definition - index definition following the table name, for example {@code (name)} or {@code USING brin (created_at)}
+ * @param unique - if index is unique
+ */
+public record IndexTemplate(String suffix, String definition, boolean unique) {
+
+    public IndexTemplate {
+        Assert.hasText(suffix, "suffix must not be empty");
+        Assert.hasText(definition, "definition must not be empty");
+    }
+
+    /**
+     * Returns index name for a partition.
+     *
+     * @param partition - partition
+     * @return index name
+     */
+    public String indexName(Partition partition) {
+        return partition.name() + "_" + suffix;
+    }
+}
@@ -2,15 +2,34 @@ package com.maciejwalkowiak.jpartitioner.core;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
 import org.springframework.util.Assert;
 
+import java.util.LinkedHashMap;
+import javax.sql.DataSource;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.time.Duration;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 /**
@@ -20,18 +39,210 @@ import java.util.stream.Stream;
  */
 public class JdbcPartitionRepository implements PartitionRepository {
     private static final Logger LOGGER = LoggerFactory.getLogger(JdbcPartitionRepository.class);
+    private static final String LOCK_NOT_AVAILABLE = "55P03";
+    private static final String OBJECT_NOT_IN_PREREQUISITE_STATE = "55000";
+    private static final int ANALYZE_BASE_THRESHOLD = 50;
+    // ANALYZE ONLY is supported since Postgres 18
+    private static final int ANALYZE_ONLY_MIN_VERSION = 180000;
 
     private final JdbcTemplate jdbcTemplate;
+    // parent table name -> partition key expression
+    private final Map<String, String> partitionKeys = new ConcurrentHashMap<>();
+    private Duration catalogCacheTtl = Duration.ZERO;
+    private int ddlBatchSize = 1;
+    private Duration lockTimeout = Duration.ZERO;
+    private Duration statementTimeout = Duration.ZERO;
+    private Duration analyzeCostDelay = Duration.ZERO;
+    private int maxAttempts = 1;
+    private int restoreParallelism = 4;
+    private boolean deferDrops;
+    private Duration initialBackoff = Duration.ZERO;
+    private Duration maxBackoff = Duration.ZERO;
+    private volatile PartitionCatalog catalog;
+    private volatile Integer serverVersion;
+    private final ThreadLocal<DdlSession> currentSession = new ThreadLocal<>();
 
     public JdbcPartitionRepository(JdbcTemplate jdbcTemplate) {
         Assert.notNull(jdbcTemplate, "jdbcTemplate must not be null");
         this.jdbcTemplate = jdbcTemplate;
     }
 
+    /**
+     * Enables caching a {@link PartitionCatalog} snapshot of all partitioned tables, loaded with a single query and
+     * kept up to date with DDL executed by this repository. Partitions created or dropped outside of this repository
+     * are visible after the snapshot expires or after {@link #invalidateCatalog()} is called.
+     *
+     * @param catalogCacheTtl - how long the snapshot is used before it is reloaded, {@link Duration#ZERO} disables caching
+     * @return jdbc partition repository
+     */
+    public JdbcPartitionRepository catalogCacheTtl(Duration catalogCacheTtl) {
+        Assert.notNull(catalogCacheTtl, "catalogCacheTtl must not be null");
+        this.catalogCacheTtl = catalogCacheTtl;
+        return this;
+    }
+
+    /**
+     * Configures how many DDL statements are sent to the database in a single round-trip. Statements in a batch are
+     * executed on a single connection within a single transaction. Applies to creating and dropping partitions -
+     * detaching partitions concurrently cannot run in a transaction and is always executed statement by statement.
+     *
+     * @param ddlBatchSize - maximum number of statements in a batch, 1 disables batching
+     * @return jdbc partition repository
+     */
+    public JdbcPartitionRepository ddlBatchSize(int ddlBatchSize) {
+        Assert.isTrue(ddlBatchSize > 0, "ddlBatchSize must be greater than 0");
+        this.ddlBatchSize = ddlBatchSize;
+        return this;
+    }
+
+    /**
+     * Configures {@code lock_timeout} of the session executing DDL statements, so that a statement waiting for a lock
+     * held by a long-running transaction fails instead of queueing all other queries on the table behind it.
+     *
+     * @param lockTimeout - lock timeout, {@link Duration#ZERO} waits indefinitely
+     * @return jdbc partition repository
+     */
+    public JdbcPartitionRepository lockTimeout(Duration lockTimeout) {
+        Assert.notNull(lockTimeout, "lockTimeout must not be null");
+        this.lockTimeout = lockTimeout;
+        return this;
+    }
+
+    /**
+     * Configures {@code statement_timeout} of the session executing DDL statements.
+     *
+     * @param statementTimeout - statement timeout, {@link Duration#ZERO} disables the timeout
+     * @return jdbc partition repository
+     */
+    public JdbcPartitionRepository statementTimeout(Duration statementTimeout) {
+        Assert.notNull(statementTimeout, "statementTimeout must not be null");
+        this.statementTimeout = statementTimeout;
+        return this;
+    }
+
+    /**
+     * Configures {@code vacuum_cost_delay} of the session, so that ANALYZE executed by {@link #analyze(String)} sleeps
+     * whenever it has done {@code vacuum_cost_limit} worth of I/O instead of competing with the workload.
+     *
+     * @param analyzeCostDelay - cost delay, {@link Duration#ZERO} disables throttling
+     * @return jdbc partition repository
+     */
+    public JdbcPartitionRepository analyzeCostDelay(Duration analyzeCostDelay) {
+        Assert.notNull(analyzeCostDelay, "analyzeCostDelay must not be null");
+        this.analyzeCostDelay = analyzeCostDelay;
+        return this;
+    }
+
+    /**
+     * Configures retrying DDL statements that failed to acquire a lock within {@link #lockTimeout(Duration)}.
+     * Backoff between attempts grows exponentially and is randomized, so that multiple processes do not retry at
+     * the same time.
+     *
+     * @param maxAttempts - maximum number of attempts, including the first one
+     * @param initialBackoff - backoff after the first failed attempt
+     * @param maxBackoff - maximum backoff between attempts
+     * @return jdbc partition repository
+     */
+    public JdbcPartitionRepository retry(int maxAttempts, Duration initialBackoff, Duration maxBackoff) {
+        Assert.isTrue(maxAttempts > 0, "maxAttempts must be greater than 0");
+        Assert.notNull(initialBackoff, "initialBackoff must not be null");
+        Assert.notNull(maxBackoff, "maxBackoff must not be null");
+        this.maxAttempts = maxAttempts;
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
+        return this;
+    }
+
+    /**
+     * Configures how many archive chunks are loaded at the same time by {@link #restorePartition(Partition, Path)},
+     * each on its own connection. Should not exceed the connection pool size.
+     *
+     * @param restoreParallelism - maximum number of concurrent loaders
+     * @return jdbc partition repository
+     */
+    public JdbcPartitionRepository restoreParallelism(int restoreParallelism) {
+        Assert.isTrue(restoreParallelism > 0, "restoreParallelism must be greater than 0");
+        this.restoreParallelism = restoreParallelism;
+        return this;
+    }
+
+    /**
+     * Configures dropping partitions in the background by {@link PartitionReaper}. Partitions are detached and queued
+     * for dropping, so that a refresh does not block on removing large tables and the I/O of dropping them can be
+     * spread over time.
+     *
+     * @param deferDrops - true to queue detached partitions instead of dropping them
+     * @return jdbc partition repository
+     */
+    public JdbcPartitionRepository deferDrops(boolean deferDrops) {
+        this.deferDrops = deferDrops;
+        return this;
+    }
+
+    /**
+     * Discards the cached catalog snapshot, so the next lookup reloads it from the database.
+     */
+    public void invalidateCatalog() {
+        this.catalog = null;
+    }
+
+    @Override
+    public void beginSession() {
+        if (currentSession.get() != null) {
+            throw new IllegalStateException("Session is already bound to the current thread");
+        }
+        DataSource dataSource = dataSource();
+        Connection connection = DataSourceUtils.getConnection(dataSource);
+        try {
+            DdlSession session = new DdlSession(connection, connection.getAutoCommit());
+            connection.setAutoCommit(true);
+            try (Statement statement = connection.createStatement()) {
+                if (!lockTimeout.isZero()) {
+                    session.set(statement, "lock_timeout", String.valueOf(lockTimeout.toMillis()));
+                }
+                if (!statementTimeout.isZero()) {
+                    session.set(statement, "statement_timeout", String.valueOf(statementTimeout.toMillis()));
+                }
+                if (!analyzeCostDelay.isZero()) {
+                    session.set(statement, "vacuum_cost_delay", String.valueOf(analyzeCostDelay.toMillis()));
+                }
+            }
+            currentSession.set(session);
+        } catch (SQLException e) {
+            DataSourceUtils.releaseConnection(connection, dataSource);
+            throw new RuntimeException("Failed to begin session", e);
+        }
+    }
+
+    @Override
+    public List<DdlExecution> endSession() {
+        DdlSession session = currentSession.get();
+        if (session == null) {
+            return List.of();
+        }
+        currentSession.remove();
+
+        try (Statement statement = session.connection.createStatement()) {
+            // values the connection had before the session, which are not necessarily server defaults
+            session.restoreSettings(statement);
+            session.connection.setAutoCommit(session.originalAutoCommit);
+        } catch (SQLException e) {
+            LOGGER.warn("Failed to reset session", e);
+        } finally {
+            DataSourceUtils.releaseConnection(session.connection, dataSource());
+        }
+        return List.copyOf(session.executions);
+    }
+
     @Override
     public List<Partition> findPartitions(String tableName) {
         Assert.notNull(tableName, "tableName must not be null");
 
+        PartitionCatalog catalog = catalog();
+        if (catalog != null) {
+            return catalog.findPartitions(tableName);
+        }
+
         String sql = """
                 SELECT
                     child.relname AS name
@@ -47,11 +258,12 @@ public class JdbcPartitionRepository implements PartitionRepository {
                     pg_namespace child_ns ON child.relnamespace = child_ns.oid
                 WHERE
                     parent.relname = ?
+                  AND pg_get_expr(child.relpartbound, child.oid) <> 'DEFAULT'
                 """;
 
         LOGGER.debug("Executing SQL: {}", sql);
 
-        return jdbcTemplate.query(sql, (rs, rowNum) -> Partition.of(rs.getString("name")), tableName)
+        return jdbcTemplate().query(sql, (rs, rowNum) -> Partition.of(rs.getString("name")), tableName)
                 .stream()
                 .sorted(Comparator.comparing(Partition::name))
                 .toList();
@@ -61,15 +273,30 @@ public class JdbcPartitionRepository implements PartitionRepository {
     public void detachPartitions(List<Partition> partitions) {
         Assert.notNull(partitions, "partitions must not be null");
 
-        partitions.stream()
-                .map(partition -> "ALTER TABLE " + partition.parentTableName() + " DETACH PARTITION " + partition.name() + " CONCURRENTLY")
-                .forEach(this::executeWithAutoCommitEnabled);
+        for (Partition partition : partitions) {
+            // Postgres does not allow detaching concurrently when a default partition exists
+            String concurrently = hasDefaultPartition(partition.parentTableName()) ? "" : " CONCURRENTLY";
+            executeWithAutoCommitEnabled("ALTER TABLE " + partition.parentTableName() + " DETACH PARTITION " + partition.name() + concurrently);
+            updateCatalog(it -> it.partitionDetached(partition));
+        }
     }
 
     @Override
     public void dropPartitions(List<Partition> partitions) {
         Assert.notNull(partitions, "partitions must not be null");
 
+        if (deferDrops) {
+            // queued before detaching, so that a table is never left detached without being queued -
+            // the reaper drops only queued tables that are already detached
+            for (Partition partition : partitions) {
+                executeWithAutoCommitEnabled("COMMENT ON TABLE " + partition.name() + " IS '" + PartitionReaper.PENDING_DROP_COMMENT + "'");
+                detachPartitions(List.of(partition));
+                // queued tables are no longer tracked as detached partitions
+                updateCatalog(it -> it.tableDropped(partition.parentTableName(), partition.name()));
+            }
+            return;
+        }
+
         // first detach partitions concurrently
         detachPartitions(partitions);
 
@@ -77,42 +304,819 @@ public class JdbcPartitionRepository implements PartitionRepository {
         partitions.stream()
                 .map(Partition::parentTableName)
                 .distinct()
-                .flatMap(this::findDetachedPartitionNames)
-                .map(partitionName -> "DROP TABLE " + partitionName)
-                .forEach(this::executeWithAutoCommitEnabled);
+                .forEach(parentTableName -> chunked(findDetachedPartitionNames(parentTableName)).forEach(chunk -> {
+                    executeWithAutoCommitEnabled(chunk.stream()
+                            .map(partitionName -> "DROP TABLE " + partitionName)
+                            .toList());
+                    chunk.forEach(partitionName -> updateCatalog(it -> it.tableDropped(parentTableName, partitionName)));
+                }));
+    }
+
+    @Override
+    public void archivePartitions(List<Partition> partitions, Path archiveDirectory) {
+        Assert.notNull(partitions, "partitions must not be null");
+        Assert.notNull(archiveDirectory, "archiveDirectory must not be null");
+
+        DdlSession session = currentSession.get();
+        if (session == null) {
+            beginSession();
+            try {
+                archivePartitions(partitions, archiveDirectory);
+            } finally {
+                endSession();
+            }
+            return;
+        }
+
+        String comment = PartitionArchive.pendingArchiveComment(archiveDirectory);
+        // tables left by a failed run are archived first
+        List<Partition> pending = findPendingArchivePartitions(comment);
+        pending.forEach(partition -> archiveAndDrop(session, partition, archiveDirectory));
+
+        for (Partition partition : partitions) {
+            if (pending.contains(partition)) {
+                continue;
+            }
+            // marked before detaching, so that a detached table is never mistaken for one that can be dropped without archiving
+            executeWithAutoCommitEnabled("COMMENT ON TABLE " + partition.name() + " IS '" + comment.replace("'", "''") + "'");
+            // once detached, partition does not receive new rows and can be copied without holding any lock on the parent
+            detachPartitions(List.of(partition));
+            updateCatalog(it -> it.tableDropped(partition.parentTableName(), partition.name()));
+            archiveAndDrop(session, partition, archiveDirectory);
+        }
+    }
+
+    private void archiveAndDrop(DdlSession session, Partition partition, Path archiveDirectory) {
+        withoutStatementTimeout(session, () -> PartitionArchive.of(partition, archiveDirectory).write(session.connection));
+        executeWithAutoCommitEnabled("DROP TABLE " + partition.name());
+        updateCatalog(it -> it.tableDropped(partition.parentTableName(), partition.name()));
+    }
+
+    private List<Partition> findPendingArchivePartitions(String comment) {
+        return jdbcTemplate().queryForList("""
+                        SELECT
+                            c.relname AS name
+                        FROM
+                            pg_class c
+                        WHERE
+                            c.relkind = 'r'
+                          AND c.relispartition IS false
+                          AND obj_description(c.oid, 'pg_class') = ?
+                        ORDER BY
+                            c.relname""", String.class, comment)
+                .stream()
+                .map(Partition::of)
+                .toList();
+    }
+
+    @Override
+    public void restorePartition(Partition partition, Path archiveDirectory) {
+        Assert.notNull(partition, "partition must not be null");
+        Assert.notNull(archiveDirectory, "archiveDirectory must not be null");
+
+        DdlSession session = currentSession.get();
+        if (session == null) {
+            beginSession();
+            try {
+                restorePartition(partition, archiveDirectory);
+            } finally {
+                endSession();
+            }
+            return;
+        }
+
+        PartitionArchive archive = PartitionArchive.of(partition, archiveDirectory);
+        long expectedRows = archive.rows();
+
+        // no indexes while loading - they are built once rows are loaded
+        executeWithAutoCommitEnabled("CREATE TABLE " + partition.name() + " (LIKE " + partition.parentTableName() + " INCLUDING DEFAULTS)");
+        try {
+            long rows = loadChunks(archive);
+            if (rows != expectedRows) {
+                throw new IllegalStateException("Restored " + rows + " rows of partition " + partition.name() + ", but archive contains " + expectedRows + " rows");
+            }
+            // validating the constraint and building indexes scan the whole table
+            withoutStatementTimeout(session, () -> {
+                executeWithAutoCommitEnabled("ALTER TABLE " + partition.name() + " ADD CONSTRAINT " + boundsConstraintName(partition) + " " + boundsCheck(partition));
+                // indexes matching indexes of the parent table are linked by ATTACH instead of being built while holding a lock on the parent
+                executeWithAutoCommitEnabled(parentIndexStatements(partition));
+            });
+        } catch (RuntimeException e) {
+            executeWithAutoCommitEnabled("DROP TABLE IF EXISTS " + partition.name());
+            throw e;
+        }
+        updateCatalog(it -> it.detachedPartitionCreated(partition));
+        attachPartitions(List.of(partition));
+    }
+
+    /**
+     * Returns statements creating indexes and index backed constraints of the parent table on a partition. Parent
+     * indexes with an equivalent index already on the partition, for example built from an index template, are not
+     * created again - only their constraints are added. Exclusion constraints are left to ATTACH.
+     */
+    private List<String> parentIndexStatements(Partition partition) {
+        Map<String, PartitionIndex> partitionIndexes = partitionIndexes(partition);
+        String sql = """
+                SELECT
+                    idx.relname AS name,
+                    pg_get_indexdef(i.indexrelid) AS definition,
+                    i.indisunique AS is_unique,
+                    con.contype AS constraint_type
+                FROM
+                    pg_index i
+                JOIN
+                    pg_class idx ON idx.oid = i.indexrelid
+                LEFT JOIN
+                    pg_constraint con ON con.conindid = i.indexrelid AND con.conrelid = i.indrelid
+                WHERE
+                    i.indrelid = ?::regclass
+                  AND con.contype IS DISTINCT FROM 'x'
+                """;
+
+        LOGGER.debug("Executing SQL: {}", sql);
+
+        return jdbcTemplate().query(sql, (rs, rowNum) -> {
+                    String constraintType = rs.getString("constraint_type");
+                    String addConstraint = constraintType == null ? null : "p".equals(constraintType) ? " PRIMARY KEY" : " UNIQUE";
+                    PartitionIndex existing = partitionIndexes.get(indexKey(rs));
+                    if (existing != null) {
+                        return existing.constrained() || addConstraint == null ? Stream.<String>empty()
+                                : Stream.of("ALTER TABLE " + partition.name() + " ADD CONSTRAINT " + existing.name() + addConstraint + " USING INDEX " + existing.name());
+                    }
+                    String definition = rs.getString("definition");
+                    String indexName = partition.name() + "_" + rs.getString("name");
+                    String createIndex = "CREATE " + (rs.getBoolean("is_unique") ? "UNIQUE " : "") + "INDEX " + indexName + " ON " + partition.name()
+                            + definition.substring(definition.indexOf(" USING "));
+                    if (addConstraint == null) {
+                        return Stream.of(createIndex);
+                    }
+                    return Stream.of(createIndex, "ALTER TABLE " + partition.name() + " ADD CONSTRAINT " + indexName + addConstraint + " USING INDEX " + indexName);
+                }, partition.parentTableName())
+                .stream()
+                .flatMap(it -> it)
+                .toList();
+    }
+
+    /**
+     * Returns indexes of a table by {@link #indexKey(ResultSet)}.
+     */
+    private Map<String, PartitionIndex> partitionIndexes(Partition partition) {
+        String sql = """
+                SELECT
+                    idx.relname AS name,
+                    pg_get_indexdef(i.indexrelid) AS definition,
+                    i.indisunique AS is_unique,
+                    EXISTS (SELECT 1 FROM pg_constraint con WHERE con.conindid = i.indexrelid AND con.conrelid = i.indrelid) AS is_constrained
+                FROM
+                    pg_index i
+                JOIN
+                    pg_class idx ON idx.oid = i.indexrelid
+                WHERE
+                    i.indrelid = ?::regclass
+                """;
+
+        LOGGER.debug("Executing SQL: {}", sql);
+
+        return jdbcTemplate().query(sql, (rs, rowNum) -> Map.entry(indexKey(rs), new PartitionIndex(rs.getString("name"), rs.getBoolean("is_constrained"))),
+                        partition.name())
+                .stream()
+                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue, (first, second) -> first.constrained() ? first : second));
+    }
+
+    /**
+     * Returns index definition without index and table names - equal for equivalent indexes of different tables.
+     */
+    private static String indexKey(ResultSet rs) throws SQLException {
+        String definition = rs.getString("definition");
+        return (rs.getBoolean("is_unique") ? "UNIQUE" : "") + definition.substring(definition.indexOf(" USING "));
+    }
+
+    private record PartitionIndex(String name, boolean constrained) {
     }
 
     @Override
     public void createPartitions(List<Partition> partitions) {
         Assert.notNull(partitions, "partitions must not be null");
 
-        partitions.stream()
-                .map(it -> "CREATE TABLE " + it.name() + " PARTITION OF " + it.parentTableName() + " FOR VALUES FROM ('" + it.start().format(DateTimeFormatter.ISO_DATE_TIME) + "') TO ('" + it.end().format(DateTimeFormatter.ISO_DATE_TIME) + "')")
-                .forEach(this::executeWithAutoCommitEnabled);
+        for (List<Partition> chunk : chunked(partitions)) {
+            executeWithAutoCommitEnabled(chunk.stream()
+                    .map(it -> "CREATE TABLE " + it.name() + " PARTITION OF " + it.parentTableName() + " " + bound(it))
+                    .toList());
+            chunk.forEach(partition -> updateCatalog(it -> it.partitionCreated(partition, bound(partition))));
+        }
     }
 
-    private void executeWithAutoCommitEnabled(String sql) {
-        LOGGER.info("Executing SQL: {}", sql);
+    @Override
+    public void createDetachedPartitions(List<Partition> partitions, boolean copyIndexes) {
+        Assert.notNull(partitions, "partitions must not be null");
+
+        String like = copyIndexes ? " INCLUDING ALL" : " INCLUDING ALL EXCLUDING INDEXES";
+        for (List<Partition> chunk : chunked(partitions)) {
+            executeWithAutoCommitEnabled(chunk.stream()
+                    .flatMap(it -> Stream.of(
+                            "CREATE TABLE IF NOT EXISTS " + it.name() + " (LIKE " + it.parentTableName() + like + ")",
+                            "ALTER TABLE " + it.name() + " DROP CONSTRAINT IF EXISTS " + boundsConstraintName(it) + ", ADD CONSTRAINT " + boundsConstraintName(it) + " " + boundsCheck(it)))
+                    .toList());
+            chunk.forEach(partition -> updateCatalog(it -> it.detachedPartitionCreated(partition)));
+        }
+    }
+
+    @Override
+    public void createIndexes(Partition partition, List<IndexTemplate> indexTemplates) {
+        Assert.notNull(partition, "partition must not be null");
+        Assert.notNull(indexTemplates, "indexTemplates must not be null");
+
+        // nothing but jpartitioner writes to a detached partition, so the lock taken by a plain build blocks no one
+        executeWithAutoCommitEnabled(indexTemplates.stream()
+                .map(template -> "CREATE " + (template.unique() ? "UNIQUE " : "") + "INDEX IF NOT EXISTS " + template.indexName(partition) + " ON " + partition.name() + " " + template.definition())
+                .toList());
+        // parent indexes not replaced by a template would otherwise be built by ATTACH while it locks the parent table
+        executeWithAutoCommitEnabled(parentIndexStatements(partition));
+    }
+
+    @Override
+    public void attachPartitions(List<Partition> partitions) {
+        Assert.notNull(partitions, "partitions must not be null");
+
+        for (List<Partition> chunk : chunked(partitions)) {
+            executeWithAutoCommitEnabled(chunk.stream()
+                    .flatMap(it -> Stream.of(
+                            "ALTER TABLE " + it.parentTableName() + " ATTACH PARTITION " + it.name() + " " + bound(it),
+                            "ALTER TABLE " + it.name() + " DROP CONSTRAINT IF EXISTS " + boundsConstraintName(it)))
+                    .toList());
+            chunk.forEach(partition -> updateCatalog(it -> it.partitionCreated(partition, bound(partition))));
+        }
+    }
+
+    @Override
+    public List<Partition> findPartitionsToAnalyze(List<Partition> partitions, double threshold) {
+        Assert.notNull(partitions, "partitions must not be null");
+        if (partitions.isEmpty()) {
+            return List.of();
+        }
+
+        // same formula as autovacuum analyze threshold - partitions that were never analyzed have negative reltuples
+        String sql = """
+                SELECT
+                    s.relname AS name
+                FROM
+                    pg_stat_user_tables s
+                JOIN
+                    pg_class c ON c.oid = s.relid
+                WHERE
+                    s.relname = ANY(string_to_array(?, ','))
+                  AND s.n_mod_since_analyze > ? + ? * GREATEST(c.reltuples, 0)
+                ORDER BY
+                    s.relname
+                """;
+
+        LOGGER.debug("Executing SQL: {}", sql);
+
+        return jdbcTemplate().query(sql, (rs, rowNum) -> Partition.of(rs.getString("name")),
+                partitions.stream().map(Partition::name).collect(Collectors.joining(",")), ANALYZE_BASE_THRESHOLD, threshold);
+    }
+
+    @Override
+    public void analyze(String tableName) {
+        Assert.notNull(tableName, "tableName must not be null");
+
+        executeWithAutoCommitEnabled("ANALYZE " + tableName);
+    }
+
+    @Override
+    public boolean analyzeParent(String parentTableName) {
+        Assert.notNull(parentTableName, "parentTableName must not be null");
+
+        if (serverVersion() < ANALYZE_ONLY_MIN_VERSION) {
+            // plain ANALYZE of a parent table analyzes all partitions as well
+            LOGGER.debug("ANALYZE ONLY is not supported by the server, skipping ANALYZE of parent table {}", parentTableName);
+            return false;
+        }
+        executeWithAutoCommitEnabled("ANALYZE ONLY " + parentTableName);
+        return true;
+    }
+
+    private int serverVersion() {
+        Integer version = serverVersion;
+        if (version == null) {
+            version = jdbcTemplate().queryForObject("SELECT current_setting('server_version_num')::int", Integer.class);
+            serverVersion = version;
+        }
+        return version;
+    }
+
+    @Override
+    public void useTablespace(String tablespace) {
+        Assert.notNull(tablespace, "tablespace must not be null");
+        DdlSession session = currentSession.get();
+        Assert.state(session != null, "Session must be bound to the current thread with beginSession()");
+
+        try (Statement statement = session.connection.createStatement()) {
+            session.set(statement, "default_tablespace", tablespace);
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to set default tablespace", e);
+        }
+    }
+
+    @Override
+    public boolean moveToTablespace(Partition partition, String tablespace) {
+        Assert.notNull(partition, "partition must not be null");
+        Assert.notNull(tablespace, "tablespace must not be null");
+
+        DdlSession session = currentSession.get();
+        if (session == null) {
+            beginSession();
+            try {
+                return moveToTablespace(partition, tablespace);
+            } finally {
+                endSession();
+            }
+        }
+
+        // partition and its indexes that are not yet in the tablespace - reltablespace 0 means database default tablespace
+        String sql = """
+                SELECT
+                    c.relname AS name,
+                    c.relkind AS kind
+                FROM
+                    pg_class c
+                WHERE
+                    c.oid IN (SELECT to_regclass(?) UNION ALL SELECT indexrelid FROM pg_index WHERE indrelid = to_regclass(?))
+                  AND COALESCE(NULLIF(c.reltablespace, 0), (SELECT dattablespace FROM pg_database WHERE datname = current_database()))
+                      IS DISTINCT FROM (SELECT oid FROM pg_tablespace WHERE spcname = ?)
+                ORDER BY
+                    c.relkind DESC
+                """;
+
+        LOGGER.debug("Executing SQL: {}", sql);
 
-        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
-            boolean originalAutoCommit = connection.getAutoCommit();
+        List<String> statements = jdbcTemplate().query(sql, (rs, rowNum) -> ("r".equals(rs.getString("kind")) ? "ALTER TABLE " : "ALTER INDEX ")
+                + rs.getString("name") + " SET TABLESPACE " + tablespace, partition.name(), partition.name(), tablespace);
+        // each relation is rewritten by a separate statement, so that locks are held only for one relation at a time
+        withoutStatementTimeout(session, () -> statements.forEach(this::executeWithAutoCommitEnabled));
+        return !statements.isEmpty();
+    }
 
+    @Override
+    public List<PartitionEstimate> estimatePartitions(List<Partition> partitions, boolean exclusiveParentLock) {
+        Assert.notNull(partitions, "partitions must not be null");
+        if (partitions.isEmpty()) {
+            return List.of();
+        }
+
+        String sql = """
+                SELECT
+                    name,
+                    COALESCE(pg_total_relation_size(c.oid), 0) AS total_bytes,
+                    GREATEST(COALESCE(c.reltuples, 0), 0)::bigint AS estimated_rows,
+                    (SELECT count(*) FROM pg_index WHERE pg_index.indrelid = c.oid) AS indexes
+                FROM
+                    unnest(string_to_array(?, ',')) WITH ORDINALITY AS names(name, position)
+                LEFT JOIN
+                    pg_class c ON c.oid = to_regclass(name)
+                ORDER BY
+                    position
+                """;
+
+        LOGGER.debug("Executing SQL: {}", sql);
+
+        // all partitions share the parent - sessions holding locks on it are counted once
+        boolean parentBusy = exclusiveParentLock && isBusy(partitions.get(0).parentTableName());
+        return jdbcTemplate().query(sql, (rs, rowNum) -> new PartitionEstimate(
+                Partition.of(rs.getString("name")),
+                rs.getLong("total_bytes"),
+                rs.getLong("estimated_rows"),
+                rs.getInt("indexes"),
+                parentBusy), partitions.stream().map(Partition::name).collect(Collectors.joining(",")));
+    }
+
+    @Override
+    public void createDefaultPartition(String parentTableName) {
+        Assert.notNull(parentTableName, "parentTableName must not be null");
+
+        String defaultPartitionName = Partition.defaultPartitionName(parentTableName);
+        executeWithAutoCommitEnabled("CREATE TABLE IF NOT EXISTS " + defaultPartitionName + " PARTITION OF " + parentTableName + " DEFAULT");
+        updateCatalog(it -> it.defaultPartitionCreated(parentTableName, defaultPartitionName));
+    }
+
+    @Override
+    public long countDefaultPartitionPages(String parentTableName) {
+        Assert.notNull(parentTableName, "parentTableName must not be null");
+
+        Long pages = jdbcTemplate().queryForObject("SELECT pg_relation_size(to_regclass(?)) / current_setting('block_size')::bigint",
+                Long.class, Partition.defaultPartitionName(parentTableName));
+        return pages != null ? pages : 0;
+    }
+
+    @Override
+    public int moveRowsFromDefaultPartition(Partition partition, long firstPage, int pages) {
+        Assert.notNull(partition, "partition must not be null");
+        Assert.isTrue(firstPage >= 0, "firstPage must not be negative");
+        Assert.isTrue(pages > 0, "pages must be greater than 0");
+
+        String defaultPartitionName = Partition.defaultPartitionName(partition.parentTableName());
+        // ctid range is read with a TID range scan, so that each batch reads only its own pages
+        return executeUpdateWithAutoCommitEnabled("WITH moved AS (DELETE FROM " + defaultPartitionName
+                + " WHERE ctid >= '(" + firstPage + ",0)'::tid AND ctid < '(" + (firstPage + pages) + ",0)'::tid AND " + boundsCondition(partition)
+                + " RETURNING *) INSERT INTO " + partition.name() + " SELECT * FROM moved");
+    }
+
+    @Override
+    public void excludeFromDefaultPartition(Partition partition) {
+        Assert.notNull(partition, "partition must not be null");
+
+        // NOT VALID skips the scan - the constraint applies to new rows right away
+        executeWithAutoCommitEnabled("ALTER TABLE " + Partition.defaultPartitionName(partition.parentTableName())
+                + " DROP CONSTRAINT IF EXISTS " + exclusionConstraintName(partition)
+                + ", ADD CONSTRAINT " + exclusionConstraintName(partition) + " CHECK (NOT (" + boundsCondition(partition) + ")) NOT VALID");
+    }
+
+    @Override
+    public void attachPartitionFromDefault(Partition partition) {
+        Assert.notNull(partition, "partition must not be null");
+
+        DdlSession session = currentSession.get();
+        if (session == null) {
+            beginSession();
             try {
-                connection.setAutoCommit(true);
-                try (Statement statement = connection.createStatement()) {
-                    statement.execute(sql);
+                attachPartitionFromDefault(partition);
+            } finally {
+                endSession();
+            }
+            return;
+        }
+
+        String defaultPartitionName = Partition.defaultPartitionName(partition.parentTableName());
+        // validation scans the default partition holding SHARE UPDATE EXCLUSIVE lock, which blocks neither reads nor writes
+        withoutStatementTimeout(session, () -> executeWithAutoCommitEnabled("ALTER TABLE " + defaultPartitionName + " VALIDATE CONSTRAINT " + exclusionConstraintName(partition)));
+        // the validated constraint proves that the default partition has no rows of the partition, so ATTACH does not
+        // scan it - ACCESS EXCLUSIVE lock on the default partition is held only for the catalog changes
+        executeInTransaction(List.of(
+                "ALTER TABLE " + partition.parentTableName() + " ATTACH PARTITION " + partition.name() + " " + bound(partition),
+                "ALTER TABLE " + partition.name() + " DROP CONSTRAINT IF EXISTS " + boundsConstraintName(partition),
+                "ALTER TABLE " + defaultPartitionName + " DROP CONSTRAINT " + exclusionConstraintName(partition)));
+        updateCatalog(it -> it.partitionCreated(partition, bound(partition)));
+    }
+
+    private String boundsCheck(Partition partition) {
+        // IS NOT NULL is needed for the check constraint to imply the range partition constraint
+        return "CHECK (" + boundsCondition(partition) + ")";
+    }
+
+    private String boundsCondition(Partition partition) {
+        String key = partitionKey(partition.parentTableName());
+        return "(" + key + ") IS NOT NULL AND (" + key + ") >= '" + partition.start().format(DateTimeFormatter.ISO_DATE_TIME) + "' AND (" + key + ") < '" + partition.end().format(DateTimeFormatter.ISO_DATE_TIME) + "'";
+    }
+
+    private static String boundsConstraintName(Partition partition) {
+        return partition.name() + "_bounds";
+    }
+
+    private static String exclusionConstraintName(Partition partition) {
+        return partition.name() + "_excluded";
+    }
+
+    private boolean isBusy(String tableName) {
+        Integer sessions = jdbcTemplate().queryForObject("""
+                SELECT count(DISTINCT pid) FROM pg_locks WHERE relation = to_regclass(?) AND granted AND pid <> pg_backend_pid()
+                """, Integer.class, tableName);
+        return sessions != null && sessions > 0;
+    }
+
+    private boolean hasDefaultPartition(String parentTableName) {
+        return Boolean.TRUE.equals(jdbcTemplate().queryForObject("SELECT to_regclass(?) IS NOT NULL", Boolean.class, Partition.defaultPartitionName(parentTableName)));
+    }
+
+    private String partitionKey(String parentTableName) {
+        return partitionKeys.computeIfAbsent(parentTableName, it -> {
+            String partitionKeyDefinition = jdbcTemplate().queryForObject("""
+                            SELECT
+                                pg_get_partkeydef(c.oid)
+                            FROM
+                                pg_class c
+                            WHERE
+                                c.relkind = 'p'
+                              AND c.relname = ?""", String.class, it);
+            if (partitionKeyDefinition == null || !partitionKeyDefinition.startsWith("RANGE (")) {
+                throw new IllegalStateException("Table " + it + " is not partitioned by range: " + partitionKeyDefinition);
+            }
+            // RANGE (created_at) -> created_at
+            return partitionKeyDefinition.substring("RANGE (".length(), partitionKeyDefinition.length() - 1);
+        });
+    }
+
+    static String bound(Partition partition) {
+        return "FOR VALUES FROM ('" + partition.start().format(DateTimeFormatter.ISO_DATE_TIME) + "') TO ('" + partition.end().format(DateTimeFormatter.ISO_DATE_TIME) + "')";
+    }
+
+    private <T> List<List<T>> chunked(List<T> list) {
+        List<List<T>> chunks = new ArrayList<>();
+        for (int i = 0; i < list.size(); i += ddlBatchSize) {
+            chunks.add(list.subList(i, Math.min(i + ddlBatchSize, list.size())));
+        }
+        return chunks;
+    }
+
+    private PartitionCatalog catalog() {
+        if (catalogCacheTtl.isZero()) {
+            return null;
+        }
+        PartitionCatalog current = this.catalog;
+        if (current == null || current.isExpired(catalogCacheTtl)) {
+            synchronized (this) {
+                current = this.catalog;
+                if (current == null || current.isExpired(catalogCacheTtl)) {
+                    current = PartitionCatalog.load(jdbcTemplate());
+                    this.catalog = current;
                 }
-            } catch (SQLException e) {
-                throw new RuntimeException("Failed to execute SQL statement", e);
+            }
+        }
+        return current;
+    }
+
+    private void updateCatalog(Consumer<PartitionCatalog> update) {
+        PartitionCatalog current = this.catalog;
+        if (current != null) {
+            update.accept(current);
+        }
+    }
+
+    private void executeWithAutoCommitEnabled(String sql) {
+        executeWithAutoCommitEnabled(List.of(sql));
+    }
+
+    private void executeWithAutoCommitEnabled(List<String> sqls) {
+        execute(sqls, false);
+    }
+
+    /**
+     * Executes statements in an explicit transaction, needed for statements like {@code LOCK TABLE}.
+     */
+    private void executeInTransaction(List<String> sqls) {
+        execute(sqls, true);
+    }
+
+    private void execute(List<String> sqls, boolean transactional) {
+        if (sqls.isEmpty()) {
+            return;
+        }
+        DdlSession session = currentSession.get();
+        if (session == null) {
+            beginSession();
+            try {
+                execute(sqls, transactional);
+            } finally {
+                endSession();
+            }
+            return;
+        }
+        sqls.forEach(sql -> LOGGER.info("Executing SQL: {}", sql));
+
+        try {
+            executeWithRetry(session, sqls, transactional);
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to execute SQL statement", e);
+        }
+    }
+
+    private int executeUpdateWithAutoCommitEnabled(String sql) {
+        DdlSession session = currentSession.get();
+        if (session == null) {
+            beginSession();
+            try {
+                return executeUpdateWithAutoCommitEnabled(sql);
             } finally {
-                connection.setAutoCommit(originalAutoCommit);
+                endSession();
             }
+        }
+        LOGGER.debug("Executing SQL: {}", sql);
+
+        return session.jdbcTemplate.update(sql);
+    }
+
+    private long loadChunks(PartitionArchive archive) {
+        Semaphore permits = new Semaphore(restoreParallelism);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<Long>> futures = archive.chunkFiles().stream()
+                    .map(chunkFile -> executor.submit(() -> {
+                        permits.acquire();
+                        // each loader streams on its own connection
+                        try (Connection connection = dataSource().getConnection()) {
+                            return withoutStatementTimeout(connection, () -> archive.load(connection, chunkFile));
+                        } finally {
+                            permits.release();
+                        }
+                    }))
+                    .toList();
+
+            long rows = 0;
+            for (Future<Long> future : futures) {
+                rows += future.get();
+            }
+            return rows;
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException ex ? ex : new RuntimeException("Failed to restore partition", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while restoring partition", e);
+        }
+    }
+
+    // copying a partition takes as long as it takes - statement timeout is meant for DDL statements
+    private void withoutStatementTimeout(DdlSession session, Runnable runnable) {
+        withoutStatementTimeout(session.connection, () -> {
+            runnable.run();
             return null;
         });
     }
 
-    private Stream<String> findDetachedPartitionNames(String parentTableName) {
-        return jdbcTemplate.queryForList("""
+    /**
+     * Runs a task with statement timeout disabled on a connection and restores the previous timeout afterwards.
+     */
+    private static <T> T withoutStatementTimeout(Connection connection, Supplier<T> task) {
+        try (Statement statement = connection.createStatement()) {
+            String previousTimeout;
+            try (ResultSet rs = statement.executeQuery("SHOW statement_timeout")) {
+                rs.next();
+                previousTimeout = rs.getString(1);
+            }
+            statement.execute("SET statement_timeout = 0");
+            try {
+                return task.get();
+            } finally {
+                statement.execute("SET statement_timeout = '" + previousTimeout + "'");
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to execute SQL statement", e);
+        }
+    }
+
+    /**
+     * Executes statements and records the execution in the session - also when statements fail after all attempts,
+     * so that failed DDL is visible to metrics.
+     */
+    private void executeWithRetry(DdlSession session, List<String> sqls, boolean transactional) throws SQLException {
+        long start = System.nanoTime();
+        long waitTime = 0;
+        int attempt = 1;
+        List<String> remaining = sqls;
+        try {
+            for (; ; attempt++) {
+                long attemptStart = System.nanoTime();
+                try {
+                    if (!remaining.isEmpty()) {
+                        if (transactional) {
+                            executeInTransaction(session.connection, remaining);
+                        } else {
+                            execute(session.connection, remaining);
+                        }
+                    }
+                    session.executions.add(new DdlExecution(sqls, attempt, Duration.ofNanos(waitTime), Duration.ofNanos(System.nanoTime() - start)));
+                    return;
+                } catch (SQLException e) {
+                    List<String> finalized = attempt < maxAttempts && isObjectNotInPrerequisiteState(e) ? finalizePendingDetaches(session.connection) : List.of();
+                    if (!finalized.isEmpty()) {
+                        // interrupted DETACH CONCURRENTLY blocks further DDL on the partition until it is finalized,
+                        // after which detaching the same partition again would fail
+                        remaining = remaining.stream()
+                                .filter(sql -> finalized.stream().noneMatch(name -> isDetachOf(sql, name)))
+                                .toList();
+                        continue;
+                    }
+                    if (attempt >= maxAttempts || !isLockNotAvailable(e)) {
+                        throw e;
+                    }
+                    long backoff = backoff(attempt);
+                    LOGGER.warn("Failed to acquire lock in attempt {}, retrying in {} ms", attempt, backoff);
+                    try {
+                        Thread.sleep(backoff);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        throw e;
+                    }
+                    waitTime += System.nanoTime() - attemptStart;
+                }
+            }
+        } catch (SQLException e) {
+            session.executions.add(new DdlExecution(sqls, attempt, Duration.ofNanos(waitTime), Duration.ofNanos(System.nanoTime() - start), true));
+            throw e;
+        }
+    }
+
+    private static void execute(Connection connection, List<String> sqls) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            if (sqls.size() == 1) {
+                statement.execute(sqls.get(0));
+            } else {
+                for (String sql : sqls) {
+                    statement.addBatch(sql);
+                }
+                statement.executeBatch();
+            }
+        }
+    }
+
+    private static void executeInTransaction(Connection connection, List<String> sqls) throws SQLException {
+        connection.setAutoCommit(false);
+        try {
+            execute(connection, sqls);
+            connection.commit();
+        } catch (SQLException | RuntimeException e) {
+            // aborted transaction has to be rolled back before the next attempt
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * Completes detaching of partitions left in the pending state by an interrupted {@code DETACH PARTITION CONCURRENTLY}.
+     *
+     * @return names of finalized partitions
+     */
+    private List<String> finalizePendingDetaches(Connection connection) throws SQLException {
+        String sql = """
+                SELECT
+                    child.relname AS name,
+                    format('ALTER TABLE %I.%I DETACH PARTITION %I.%I FINALIZE', parent_ns.nspname, parent.relname, child_ns.nspname, child.relname) AS finalize
+                FROM
+                    pg_inherits
+                JOIN
+                    pg_class parent ON pg_inherits.inhparent = parent.oid
+                JOIN
+                    pg_class child ON pg_inherits.inhrelid = child.oid
+                JOIN
+                    pg_namespace parent_ns ON parent.relnamespace = parent_ns.oid
+                JOIN
+                    pg_namespace child_ns ON child.relnamespace = child_ns.oid
+                WHERE
+                    pg_inherits.inhdetachpending
+                """;
+
+        LOGGER.debug("Executing SQL: {}", sql);
+
+        List<String> names = new ArrayList<>();
+        List<String> statements = new ArrayList<>();
+        try (Statement statement = connection.createStatement()) {
+            try (ResultSet rs = statement.executeQuery(sql)) {
+                while (rs.next()) {
+                    names.add(rs.getString("name"));
+                    statements.add(rs.getString("finalize"));
+                }
+            }
+            for (String finalize : statements) {
+                LOGGER.warn("Finalizing pending detach: {}", finalize);
+                statement.execute(finalize);
+            }
+        }
+        if (!names.isEmpty()) {
+            invalidateCatalog();
+        }
+        return names;
+    }
+
+    private static boolean isDetachOf(String sql, String partitionName) {
+        return sql.endsWith(" DETACH PARTITION " + partitionName) || sql.endsWith(" DETACH PARTITION " + partitionName + " CONCURRENTLY");
+    }
+
+    private static boolean isObjectNotInPrerequisiteState(SQLException e) {
+        return OBJECT_NOT_IN_PREREQUISITE_STATE.equals(e.getSQLState());
+    }
+
+    private long backoff(int attempt) {
+        long exponential = initialBackoff.toMillis() << Math.min(attempt - 1, 30);
+        long backoff = Math.min(maxBackoff.toMillis(), exponential);
+        // equal jitter - at least half of the backoff, so that retries do not get too aggressive
+        return backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+    }
+
+    private static boolean isLockNotAvailable(SQLException e) {
+        for (SQLException current = e; current != null; current = current.getNextException()) {
+            if (LOCK_NOT_AVAILABLE.equals(current.getSQLState())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private JdbcTemplate jdbcTemplate() {
+        DdlSession session = currentSession.get();
+        return session != null ? session.jdbcTemplate : jdbcTemplate;
+    }
+
+    private DataSource dataSource() {
+        DataSource dataSource = jdbcTemplate.getDataSource();
+        Assert.state(dataSource != null, "jdbcTemplate must have a data source");
+        return dataSource;
+    }
+
+    private List<String> findDetachedPartitionNames(String parentTableName) {
+        PartitionCatalog catalog = catalog();
+        if (catalog != null) {
+            return catalog.findDetachedPartitionNames(parentTableName);
+        }
+        return jdbcTemplate().queryForList("""
                         SELECT
                             c.relname AS name
                         FROM
@@ -122,7 +1126,38 @@ public class JdbcPartitionRepository implements PartitionRepository {
                         WHERE
                             c.relkind = 'r'
                           AND c.relispartition IS false 
-                          AND c.relname LIKE ? || '%'""", String.class, parentTableName)
-                .stream();
+                          AND c.relname LIKE ? || '%'
+                          AND coalesce(obj_description(c.oid, 'pg_class'), '') NOT LIKE 'jpartitioner:%'""", String.class, parentTableName);
+    }
+
+    private static final class DdlSession {
+        private final Connection connection;
+        private final boolean originalAutoCommit;
+        private final JdbcTemplate jdbcTemplate;
+        private final List<DdlExecution> executions = new ArrayList<>();
+        // setting name -> value before the session changed it
+        private final Map<String, String> originalSettings = new LinkedHashMap<>();
+
+        private DdlSession(Connection connection, boolean originalAutoCommit) {
+            this.connection = connection;
+            this.originalAutoCommit = originalAutoCommit;
+            this.jdbcTemplate = new JdbcTemplate(new SingleConnectionDataSource(connection, true));
+        }
+
+        private void set(Statement statement, String name, String value) throws SQLException {
+            if (!originalSettings.containsKey(name)) {
+                try (ResultSet rs = statement.executeQuery("SHOW " + name)) {
+                    rs.next();
+                    originalSettings.put(name, rs.getString(1));
+                }
+            }
+            statement.execute("SET " + name + " = '" + value + "'");
+        }
+
+        private void restoreSettings(Statement statement) throws SQLException {
+            for (Map.Entry<String, String> setting : originalSettings.entrySet()) {
+                statement.execute("SET " + setting.getKey() + " = '" + setting.getValue().replace("'", "''") + "'");
+            }
+        }
     }
 }
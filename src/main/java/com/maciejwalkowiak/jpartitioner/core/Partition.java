@@ -4,19 +4,51 @@ import org.springframework.util.Assert;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
 import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoField;
+import java.time.temporal.IsoFields;
 
 /**
  * A database table partition.
  *
  * @author Maciej Walkowiak
  * @param name - full partition name
- * @param rangeType - if partition is created per month or per day - resolved from a partition name
+ * @param rangeType - time range covered by the partition - resolved from a partition name
+ * @param start - the beginning of partition range (inclusive) - resolved from a partition name
+ * @param end - the end of partition range (exclusive) - resolved from a partition name
  */
-public record Partition(String name, RangeType rangeType) {
+public record Partition(String name, RangeType rangeType, LocalDateTime start, LocalDateTime end) {
     private static final String SEPARATOR = "_";
-    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyyMMdd");
+    private static final DateTimeFormatter HOURLY_FORMATTER = DateTimeFormatter.ofPattern("yyyyMMddHH");
+    private static final DateTimeFormatter DAILY_FORMATTER = DateTimeFormatter.ofPattern("yyyyMMdd");
+    private static final DateTimeFormatter WEEKLY_FORMATTER = new DateTimeFormatterBuilder()
+            .appendValue(IsoFields.WEEK_BASED_YEAR, 4)
+            .appendLiteral('w')
+            .appendValue(IsoFields.WEEK_OF_WEEK_BASED_YEAR, 2)
+            .parseDefaulting(ChronoField.DAY_OF_WEEK, 1)
+            .toFormatter();
+    private static final DateTimeFormatter MONTHLY_FORMATTER = DateTimeFormatter.ofPattern("yyyyMM");
+    private static final DateTimeFormatter QUARTERLY_FORMATTER = new DateTimeFormatterBuilder()
+            .appendValue(ChronoField.YEAR, 4)
+            .appendLiteral('q')
+            .appendValue(IsoFields.QUARTER_OF_YEAR, 1)
+            .parseDefaulting(IsoFields.DAY_OF_QUARTER, 1)
+            .toFormatter();
+
+    public Partition {
+        Assert.notNull(name, "name must not be null");
+        Assert.notNull(rangeType, "rangeType must not be null");
+        Assert.notNull(start, "start must not be null");
+        Assert.notNull(end, "end must not be null");
+        Assert.isTrue(start.equals(rangeType.truncate(start)), () -> "start " + start + " is not the beginning of " + rangeType + " range");
+        Assert.isTrue(end.equals(rangeType.plus(start, 1)), () -> "end " + end + " is not the end of " + rangeType + " range starting at " + start);
+        Assert.isTrue(name.contains(SEPARATOR) && suffix(name).equals(formatter(rangeType).format(start)),
+                () -> "Partition name '" + name + "' does not match " + rangeType + " range starting at " + start);
+    }
 
     /**
      * Creates a partition instance to be created for a given parent table name, range and point in time.
@@ -27,16 +59,26 @@ public record Partition(String name, RangeType rangeType) {
      * @return a new partition
      */
     public static Partition of(String parentTableName, RangeType rangeType, LocalDate date) {
-        Assert.notNull(parentTableName, "parentTableName must not be null");
-        Assert.notNull(rangeType, "rangeType must not be null");
         Assert.notNull(date, "date must not be null");
 
-        String suffix = switch (rangeType) {
-            case DAILY -> date.format(DateTimeFormatter.ofPattern("yyyyMMdd"));
-            case MONTHLY -> date.format(DateTimeFormatter.ofPattern("yyyyMM"));
-        };
-        return Partition.of(parentTableName + SEPARATOR + suffix);
+        return of(parentTableName, rangeType, date.atStartOfDay());
+    }
+
+    /**
+     * Creates a partition instance to be created for a given parent table name, range and point in time.
+     *
+     * @param parentTableName - parent table name
+     * @param rangeType - range type
+     * @param dateTime - point in time
+     * @return a new partition
+     */
+    public static Partition of(String parentTableName, RangeType rangeType, LocalDateTime dateTime) {
+        Assert.notNull(parentTableName, "parentTableName must not be null");
+        Assert.notNull(rangeType, "rangeType must not be null");
+        Assert.notNull(dateTime, "dateTime must not be null");
 
+        LocalDateTime start = rangeType.truncate(dateTime);
+        return new Partition(parentTableName + SEPARATOR + formatter(rangeType).format(start), rangeType, start, rangeType.plus(start, 1));
     }
 
     /**
@@ -53,14 +95,43 @@ public record Partition(String name, RangeType rangeType) {
         }
         String suffix = suffix(name);
         RangeType rangeType;
-        if (suffix.length() == 6) {
-            rangeType = RangeType.MONTHLY;
+        if (suffix.length() == 10) {
+            rangeType = RangeType.HOURLY;
         } else if (suffix.length() == 8) {
             rangeType = RangeType.DAILY;
+        } else if (suffix.length() == 7 && suffix.charAt(4) == 'w') {
+            rangeType = RangeType.WEEKLY;
+        } else if (suffix.length() == 6 && suffix.charAt(4) == 'q') {
+            rangeType = RangeType.QUARTERLY;
+        } else if (suffix.length() == 6) {
+            rangeType = RangeType.MONTHLY;
         } else {
             throw new IllegalStateException(String.format("Invalid partition name: %s", suffix));
         }
-        return new Partition(name, rangeType);
+        try {
+            LocalDateTime start = switch (rangeType) {
+                case HOURLY -> LocalDateTime.parse(suffix, HOURLY_FORMATTER);
+                case DAILY, WEEKLY, QUARTERLY -> LocalDate.parse(suffix, formatter(rangeType)).atStartOfDay();
+                case MONTHLY -> YearMonth.parse(suffix, MONTHLY_FORMATTER).atDay(1).atStartOfDay();
+            };
+            // lenient resolving turns dates like 20250230 into valid ones, which would not match the name
+            if (!formatter(rangeType).format(start).equals(suffix)) {
+                throw new IllegalStateException("Partition name '" + name + "' contains date that does not exist in " + rangeType + " range: " + suffix);
+            }
+            return new Partition(name, rangeType, start, rangeType.plus(start, 1));
+        } catch (DateTimeParseException e) {
+            throw new IllegalStateException("Partition name '" + name + "' contains invalid " + rangeType + " date format: " + suffix, e);
+        }
+    }
+
+    private static DateTimeFormatter formatter(RangeType rangeType) {
+        return switch (rangeType) {
+            case HOURLY -> HOURLY_FORMATTER;
+            case DAILY -> DAILY_FORMATTER;
+            case WEEKLY -> WEEKLY_FORMATTER;
+            case MONTHLY -> MONTHLY_FORMATTER;
+            case QUARTERLY -> QUARTERLY_FORMATTER;
+        };
     }
 
     /**
@@ -82,44 +153,40 @@ public record Partition(String name, RangeType rangeType) {
     }
 
     /**
-     * Returns the beginning of partition range.
+     * Returns the beginning of partition range as seconds since epoch, treating the range as UTC.
      *
-     * @return beginning of partition range
+     * @return beginning of partition range in epoch seconds
      */
-    public LocalDateTime start() {
-        return switch (this.rangeType) {
-            case DAILY -> LocalDate.parse(this.suffix(), FORMATTER).atStartOfDay();
-            case MONTHLY -> LocalDate.parse(this.suffix() + "01", FORMATTER).atStartOfDay();
-        };
+    public long startEpochSecond() {
+        return start.toEpochSecond(ZoneOffset.UTC);
     }
 
     /**
-     * Returns the end of partition range.
+     * Returns the end of partition range as seconds since epoch, treating the range as UTC.
      *
-     * @return end of partition range
+     * @return end of partition range in epoch seconds
      */
-    public LocalDateTime end() {
-        return switch (this.rangeType) {
-            case DAILY -> LocalDate.parse(this.suffix(), FORMATTER).atStartOfDay().plusDays(1);
-            case MONTHLY -> LocalDate.parse(this.suffix() + "01", FORMATTER).atStartOfDay().plusMonths(1);
-        };
+    public long endEpochSecond() {
+        return end.toEpochSecond(ZoneOffset.UTC);
     }
 
     private static String suffix(String name) {
         return name.substring(name.lastIndexOf(SEPARATOR) + 1);
     }
 
+    static String defaultPartitionName(String parentTableName) {
+        return parentTableName + SEPARATOR + "default";
+    }
+
     void validate(PartitionConfig config) {
         if (!name.startsWith(config.tableName() + SEPARATOR)) {
             throw new IllegalStateException("Partition name '" + name + "' does not start with " + config.tableName() + SEPARATOR);
         }
-        try {
-            switch (config.rangeType()) {
-                case DAILY -> LocalDate.parse(name.substring(config.tableName().length() + 1), FORMATTER);
-                case MONTHLY -> LocalDate.parse(name.substring(config.tableName().length() + 1) + "01", FORMATTER);
-            };
-        } catch (DateTimeParseException e) {
-            throw new IllegalStateException("Partition name '" + name + "' contains invalid date format", e);
+        if (!parentTableName().equals(config.tableName())) {
+            throw new IllegalStateException("Partition '" + name + "' belongs to table " + parentTableName() + " instead of " + config.tableName());
+        }
+        if (rangeType != config.rangeType()) {
+            throw new IllegalStateException("Partition '" + name + "' has " + rangeType + " range while table " + config.tableName() + " is partitioned with " + config.rangeType() + " range");
         }
     }
 }
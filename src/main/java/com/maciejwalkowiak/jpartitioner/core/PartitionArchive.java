@@ -0,0 +1,248 @@
+package com.maciejwalkowiak.jpartitioner.core;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Properties;
+import java.util.stream.IntStream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Archive of a single partition stored in a directory named after the partition. Rows are streamed with
+ * {@code COPY ... TO STDOUT} in binary format to gzip compressed chunk files, each chunk covering a range of table
+ * pages, so that the memory used does not depend on partition size. A manifest with row and chunk counts is written
+ * last - a directory without manifest is an incomplete archive. Chunks and manifest are flushed to disk before they are
+ * renamed to their final names, so an archive with manifest survives a crash. Chunks are restored with
+ * {@code COPY ... FROM STDIN}.
+ *
+ * @author Maciej Walkowiak
+ */
+final class PartitionArchive {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PartitionArchive.class);
+    private static final String MANIFEST = "manifest.properties";
+    // 1 GB of 8 kB pages
+    private static final long CHUNK_PAGES = 131_072;
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final String PENDING_ARCHIVE_COMMENT = "jpartitioner:pending-archive:";
+
+    private final Partition partition;
+    private final Path directory;
+
+    private PartitionArchive(Partition partition, Path directory) {
+        this.partition = partition;
+        this.directory = directory;
+    }
+
+    /**
+     * Returns an archive of a partition within an archive directory.
+     *
+     * @param partition - partition
+     * @param archiveDirectory - directory with partition archives
+     * @return partition archive
+     */
+    static PartitionArchive of(Partition partition, Path archiveDirectory) {
+        return new PartitionArchive(partition, archiveDirectory.resolve(partition.name()));
+    }
+
+    /**
+     * Returns comment marking tables that are detached, but not yet archived to an archive directory.
+     *
+     * @param archiveDirectory - directory with partition archives
+     * @return table comment
+     */
+    static String pendingArchiveComment(Path archiveDirectory) {
+        return PENDING_ARCHIVE_COMMENT + archiveDirectory.toAbsolutePath().normalize();
+    }
+
+    /**
+     * Streams all rows of a partition table to chunk files and verifies that the number of copied rows matches
+     * the number of rows in the table. The table must not be modified while it is archived.
+     *
+     * @param connection - connection to use
+     * @return number of archived rows
+     */
+    long write(Connection connection) {
+        try {
+            Files.createDirectories(directory);
+            syncDirectory(directory.getParent());
+            Files.deleteIfExists(directory.resolve(MANIFEST));
+            CopyManager copyManager = connection.unwrap(PGConnection.class).getCopyAPI();
+
+            long expectedRows = queryForLong(connection, "SELECT count(*) FROM " + partition.name());
+            long pages = queryForLong(connection, "SELECT pg_relation_size('" + partition.name() + "') / current_setting('block_size')::bigint");
+
+            long rows = 0;
+            int chunks = 0;
+            for (long firstPage = 0; chunks == 0 || firstPage < pages; firstPage += CHUNK_PAGES) {
+                // last chunk has no upper bound
+                String condition = "ctid >= '(" + firstPage + ",0)'::tid"
+                        + (firstPage + CHUNK_PAGES < pages ? " AND ctid < '(" + (firstPage + CHUNK_PAGES) + ",0)'::tid" : "");
+                rows += writeChunk(copyManager, chunks++, "COPY (SELECT * FROM " + partition.name() + " WHERE " + condition + ") TO STDOUT (FORMAT binary)");
+            }
+            if (rows != expectedRows) {
+                throw new IllegalStateException("Archived " + rows + " rows of partition " + partition.name() + ", but table contains " + expectedRows + " rows");
+            }
+            // chunks must be durable before the manifest pointing to them
+            syncDirectory(directory);
+            writeManifest(rows, chunks);
+            syncDirectory(directory);
+            LOGGER.info("Archived {} rows of partition {} to {}", rows, partition.name(), directory);
+            return rows;
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to archive partition " + partition.name(), e);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to archive partition " + partition.name(), e);
+        }
+    }
+
+    /**
+     * Returns if a complete archive exists.
+     *
+     * @return true if archive has a manifest
+     */
+    boolean exists() {
+        return Files.exists(directory.resolve(MANIFEST));
+    }
+
+    /**
+     * Returns number of archived rows recorded in the manifest.
+     *
+     * @return number of archived rows
+     */
+    long rows() {
+        return Long.parseLong(manifest().getProperty("rows"));
+    }
+
+    /**
+     * Returns chunk files recorded in the manifest. Chunks are independent and can be loaded in any order.
+     *
+     * @return chunk files
+     */
+    List<Path> chunkFiles() {
+        int chunks = Integer.parseInt(manifest().getProperty("chunks"));
+        return IntStream.range(0, chunks).mapToObj(this::chunkFile).toList();
+    }
+
+    /**
+     * Streams rows from a chunk file to a partition table with {@code COPY ... FROM STDIN}.
+     *
+     * @param connection - connection to use
+     * @param chunkFile - chunk file
+     * @return number of loaded rows
+     */
+    long load(Connection connection, Path chunkFile) {
+        String sql = "COPY " + partition.name() + " FROM STDIN (FORMAT binary)";
+        LOGGER.debug("Executing SQL: {}", sql);
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(chunkFile), BUFFER_SIZE)) {
+            long rows = connection.unwrap(PGConnection.class).getCopyAPI().copyIn(sql, in, BUFFER_SIZE);
+            if (!connection.getAutoCommit()) {
+                connection.commit();
+            }
+            return rows;
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to load " + chunkFile + " to " + partition.name(), e);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to load " + chunkFile + " to " + partition.name(), e);
+        }
+    }
+
+    private Properties manifest() {
+        Path manifestFile = directory.resolve(MANIFEST);
+        if (!Files.exists(manifestFile)) {
+            throw new IllegalStateException("Archive of partition " + partition.name() + " not found in " + directory);
+        }
+        Properties manifest = new Properties();
+        try (InputStream in = Files.newInputStream(manifestFile)) {
+            manifest.load(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read " + manifestFile, e);
+        }
+        return manifest;
+    }
+
+    private long writeChunk(CopyManager copyManager, int chunk, String sql) throws SQLException, IOException {
+        Path file = chunkFile(chunk);
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        LOGGER.debug("Executing SQL: {}", sql);
+
+        long rows;
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+             FastGZIPOutputStream out = new FastGZIPOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE))) {
+            rows = copyManager.copyOut(sql, out);
+            out.finish();
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return rows;
+    }
+
+    private void writeManifest(long rows, int chunks) throws IOException {
+        Properties manifest = new Properties();
+        manifest.setProperty("table", partition.name());
+        manifest.setProperty("rows", String.valueOf(rows));
+        manifest.setProperty("chunks", String.valueOf(chunks));
+        Path file = directory.resolve(MANIFEST);
+        Path tmp = file.resolveSibling(MANIFEST + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+             OutputStream out = Channels.newOutputStream(channel)) {
+            manifest.store(out, null);
+            channel.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Flushes directory entries, so that renamed files survive a crash. Not every platform supports opening
+     * a directory, in which case entries are flushed by the operating system.
+     */
+    private static void syncDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            LOGGER.debug("Failed to sync directory {}", directory, e);
+        }
+    }
+
+    private Path chunkFile(int chunk) {
+        return directory.resolve("%s.%05d.copy.gz".formatted(partition.name(), chunk));
+    }
+
+    private static long queryForLong(Connection connection, String sql) throws SQLException {
+        LOGGER.debug("Executing SQL: {}", sql);
+        try (Statement statement = connection.createStatement(); ResultSet rs = statement.executeQuery(sql)) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    /**
+     * Trades compression ratio for speed, so that compression keeps up with the disk.
+     */
+    private static final class FastGZIPOutputStream extends GZIPOutputStream {
+        FastGZIPOutputStream(OutputStream out) throws IOException {
+            super(out, BUFFER_SIZE);
+            def.setLevel(Deflater.BEST_SPEED);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.maciejwalkowiak.jpartitioner.core;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * In-memory snapshot of partitioned tables, their partitions with bounds and detached leftovers, loaded from
+ * the Postgres catalog with a single query.
+ *
+ * The snapshot is kept up to date by {@link JdbcPartitionRepository} with DDL statements it executes itself.
+ * DDL executed outside of the repository is visible only after the snapshot is reloaded.
+ *
+ * @author Maciej Walkowiak
+ */
+final class PartitionCatalog {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PartitionCatalog.class);
+    static final String DEFAULT_BOUND = "DEFAULT";
+
+    private final Map<String, ParentTable> parentTables = new ConcurrentHashMap<>();
+    private final Instant loadedAt;
+
+    private PartitionCatalog(Instant loadedAt) {
+        this.loadedAt = loadedAt;
+    }
+
+    /**
+     * Loads partitioned tables, their partitions and detached partitions.
+     *
+     * @param jdbcTemplate - jdbc template
+     * @return catalog snapshot
+     */
+    static PartitionCatalog load(JdbcTemplate jdbcTemplate) {
+        String sql = """
+                SELECT
+                    parent.relname AS parent_name,
+                    child.relname AS name,
+                    pg_get_expr(child.relpartbound, child.oid) AS bound,
+                    true AS attached
+                FROM
+                    pg_class parent
+                LEFT JOIN
+                    pg_inherits ON pg_inherits.inhparent = parent.oid
+                LEFT JOIN
+                    pg_class child ON pg_inherits.inhrelid = child.oid
+                WHERE
+                    parent.relkind = 'p'
+                UNION ALL
+                SELECT
+                    parent.relname AS parent_name,
+                    detached.relname AS name,
+                    NULL AS bound,
+                    false AS attached
+                FROM
+                    pg_class parent
+                JOIN
+                    pg_class detached ON detached.relname LIKE parent.relname || '%'
+                WHERE
+                    parent.relkind = 'p'
+                  AND detached.relkind = 'r'
+                  AND detached.relispartition IS false
+                  AND coalesce(obj_description(detached.oid, 'pg_class'), '') NOT LIKE 'jpartitioner:%'
+                """;
+
+        LOGGER.debug("Executing SQL: {}", sql);
+
+        PartitionCatalog catalog = new PartitionCatalog(Instant.now());
+        jdbcTemplate.query(sql, (RowCallbackHandler) rs -> {
+            ParentTable parentTable = catalog.parentTable(rs.getString("parent_name"));
+            String name = rs.getString("name");
+            if (name == null) {
+                return;
+            }
+            if (rs.getBoolean("attached")) {
+                parentTable.partitions.put(name, rs.getString("bound"));
+            } else {
+                parentTable.detached.add(name);
+            }
+        });
+        return catalog;
+    }
+
+    /**
+     * Returns if the snapshot is older than given time to live.
+     *
+     * @param ttl - time to live
+     * @return true if snapshot should be reloaded
+     */
+    boolean isExpired(Duration ttl) {
+        return loadedAt.plus(ttl).isBefore(Instant.now());
+    }
+
+    /**
+     * Returns partitions attached to a parent table sorted by name. Default partition is not included.
+     *
+     * @param parentTableName - parent table name
+     * @return list of partitions
+     */
+    List<Partition> findPartitions(String parentTableName) {
+        return parentTable(parentTableName).partitions.entrySet()
+                .stream()
+                .filter(it -> !DEFAULT_BOUND.equals(it.getValue()))
+                .map(it -> Partition.of(it.getKey()))
+                .toList();
+    }
+
+    /**
+     * Returns names of tables that were detached from a parent table.
+     *
+     * @param parentTableName - parent table name
+     * @return names of detached tables
+     */
+    List<String> findDetachedPartitionNames(String parentTableName) {
+        return List.copyOf(parentTable(parentTableName).detached);
+    }
+
+    void partitionCreated(Partition partition, String bound) {
+        ParentTable parentTable = parentTable(partition.parentTableName());
+        parentTable.detached.remove(partition.name());
+        parentTable.partitions.put(partition.name(), bound);
+    }
+
+    void defaultPartitionCreated(String parentTableName, String defaultPartitionName) {
+        parentTable(parentTableName).partitions.put(defaultPartitionName, DEFAULT_BOUND);
+    }
+
+    void detachedPartitionCreated(Partition partition) {
+        parentTable(partition.parentTableName()).detached.add(partition.name());
+    }
+
+    void partitionDetached(Partition partition) {
+        ParentTable parentTable = parentTable(partition.parentTableName());
+        parentTable.partitions.remove(partition.name());
+        parentTable.detached.add(partition.name());
+    }
+
+    void tableDropped(String parentTableName, String tableName) {
+        parentTable(parentTableName).detached.remove(tableName);
+    }
+
+    private ParentTable parentTable(String parentTableName) {
+        return parentTables.computeIfAbsent(parentTableName, it -> new ParentTable());
+    }
+
+    private static final class ParentTable {
+        // partition name -> partition bound expression
+        private final Map<String, String> partitions = new ConcurrentSkipListMap<>();
+        private final Set<String> detached = ConcurrentHashMap.newKeySet();
+    }
+}
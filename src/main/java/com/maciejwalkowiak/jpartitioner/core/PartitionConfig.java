@@ -2,6 +2,15 @@ package com.maciejwalkowiak.jpartitioner.core;
 
 import org.springframework.util.Assert;
 
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
 /**
  * Partitions configuration to be used on {@link Partitions#refresh(PartitionConfig)}.
  *
@@ -13,6 +22,22 @@ public class PartitionConfig {
     private int buffer = 0;
     private RangeType rangeType = RangeType.DAILY;
     private RetentionPolicy retentionPolicy = RetentionPolicy.DETACH;
+    private PartitionCreationMode creationMode = PartitionCreationMode.PARTITION_OF;
+    private long retentionBytes = Long.MAX_VALUE;
+    private long retentionRows = Long.MAX_VALUE;
+    private Path archiveDirectory;
+    private final List<IndexTemplate> indexTemplates = new ArrayList<>();
+    private double analyzeThreshold;
+    private Duration analyzeBudget;
+    private String tablespace;
+    // age -> tablespace
+    private final NavigableMap<Integer, String> tablespaceTiers = new TreeMap<>();
+    private LocalTime tieringWindowStart = LocalTime.MIN;
+    private LocalTime tieringWindowEnd = LocalTime.MAX;
+    private Duration tieringPause = Duration.ZERO;
+    private boolean defaultPartition = false;
+    private int drainBatchPages = 1_000;
+    private Duration drainPause = Duration.ofMillis(100);
 
     /**
      * Creates a partition config for an existing parent table.
@@ -30,7 +55,7 @@ public class PartitionConfig {
     }
 
     /**
-     * Returns if partitions are split by day or a month.
+     * Returns time range covered by a single partition.
      *
      * @return range type
      */
@@ -38,6 +63,16 @@ public class PartitionConfig {
         return rangeType;
     }
 
+    /**
+     * Configures partition config to split partitions by hour.
+     *
+     * @return partition config
+     */
+    public PartitionConfig hourly() {
+        this.rangeType = RangeType.HOURLY;
+        return this;
+    }
+
     /**
      * Configures partition config to split partitions by day.
      *
@@ -48,6 +83,16 @@ public class PartitionConfig {
         return this;
     }
 
+    /**
+     * Configures partition config to split partitions by ISO week.
+     *
+     * @return partition config
+     */
+    public PartitionConfig weekly() {
+        this.rangeType = RangeType.WEEKLY;
+        return this;
+    }
+
     /**
      * Configures partition config to split partitions by month
      *
@@ -58,6 +103,16 @@ public class PartitionConfig {
         return this;
     }
 
+    /**
+     * Configures partition config to split partitions by quarter.
+     *
+     * @return partition config
+     */
+    public PartitionConfig quarterly() {
+        this.rangeType = RangeType.QUARTERLY;
+        return this;
+    }
+
     /**
      * Configures partition config with given range type.
      *
@@ -73,7 +128,7 @@ public class PartitionConfig {
     /**
      * Configures retention - how many past partitions should be maintained. Partitions outside of retention period are either dropped or detached depending on the {@link RetentionPolicy}.
      *
-     * @param retention - retention length - how many days or months
+     * @param retention - retention length - how many partitions of configured range type
      * @param retentionPolicy - policy on what to do with partitions older than retention period
      * @return partition config
      */
@@ -84,6 +139,37 @@ public class PartitionConfig {
         return this;
     }
 
+    /**
+     * Limits total size of partitions kept by retention - the oldest past partitions are removed according to
+     * the {@link RetentionPolicy} until the total size of the table fits within the budget. Sizes are read from
+     * catalog statistics once per refresh. Current and future partitions are never removed, but count towards
+     * the budget. Applies on top of {@link #retention(int, RetentionPolicy)} - past partitions older than the oldest
+     * existing partition are not created, so that partitions removed by the budget are not recreated.
+     *
+     * @param maxBytes - maximum total size of partitions in bytes, including indexes
+     * @return partition config
+     */
+    public PartitionConfig retentionBytes(long maxBytes) {
+        Assert.isTrue(maxBytes > 0, "maxBytes must be greater than 0");
+        this.retentionBytes = maxBytes;
+        return this;
+    }
+
+    /**
+     * Limits total number of rows in partitions kept by retention - the oldest past partitions are removed
+     * according to the {@link RetentionPolicy} until the estimated number of rows fits within the budget. Row counts
+     * are estimates from the last ANALYZE, read once per refresh. Applies on top of {@link #retention(int, RetentionPolicy)}
+     * the same way as {@link #retentionBytes(long)}.
+     *
+     * @param maxRows - maximum estimated number of rows
+     * @return partition config
+     */
+    public PartitionConfig retentionRows(long maxRows) {
+        Assert.isTrue(maxRows > 0, "maxRows must be greater than 0");
+        this.retentionRows = maxRows;
+        return this;
+    }
+
     /**
      * Configures buffer - how many future partitions should be created upfront.
      *
@@ -95,6 +181,165 @@ public class PartitionConfig {
         return this;
     }
 
+    /**
+     * Configures how new partitions are created.
+     *
+     * @param creationMode - creation mode
+     * @return partition config
+     */
+    public PartitionConfig creationMode(PartitionCreationMode creationMode) {
+        Assert.notNull(creationMode, "creationMode cannot be null");
+        this.creationMode = creationMode;
+        return this;
+    }
+
+    /**
+     * Configures retention with {@link RetentionPolicy#ARCHIVE} policy.
+     *
+     * @param retention - number of partitions to keep
+     * @param archiveDirectory - directory to store archived partitions in
+     * @return partition config
+     */
+    public PartitionConfig archive(int retention, Path archiveDirectory) {
+        Assert.notNull(archiveDirectory, "archiveDirectory cannot be null");
+        this.archiveDirectory = archiveDirectory;
+        return retention(retention, RetentionPolicy.ARCHIVE);
+    }
+
+    /**
+     * Configures tablespace for new partitions and their indexes.
+     *
+     * @param tablespace - tablespace name
+     * @return partition config
+     */
+    public PartitionConfig tablespace(String tablespace) {
+        Assert.hasText(tablespace, "tablespace cannot be empty");
+        this.tablespace = tablespace;
+        return this;
+    }
+
+    /**
+     * Configures a tablespace tier - partitions that are at least {@code age} partitions old are moved to the tablespace.
+     * The current partition is 0 partitions old. With multiple tiers, partitions are moved to the tier with the highest
+     * age they have reached.
+     *
+     * @param age - age in number of partitions of configured range type
+     * @param tablespace - tablespace name
+     * @return partition config
+     * @see #tieringWindow(LocalTime, LocalTime, Duration)
+     */
+    public PartitionConfig tablespace(int age, String tablespace) {
+        Assert.isTrue(age > 0, "age must be greater than 0");
+        Assert.hasText(tablespace, "tablespace cannot be empty");
+        this.tablespaceTiers.put(age, tablespace);
+        return this;
+    }
+
+    /**
+     * Configures when partitions are moved between tablespaces. Moving a partition rewrites it while holding
+     * an {@code ACCESS EXCLUSIVE} lock on it, which blocks reads and writes of the partition, so partitions are moved
+     * one at a time with a pause in between, and only within the window - remaining partitions are moved on the next
+     * refresh within the window. The window is checked in the system default time zone before each partition is moved,
+     * so a move that starts just before the end of the window can run past it.
+     *
+     * @param start - beginning of the window (inclusive)
+     * @param end - end of the window (inclusive), can be before the beginning for windows that span midnight
+     * @param pause - pause after moving a partition
+     * @return partition config
+     */
+    public PartitionConfig tieringWindow(LocalTime start, LocalTime end, Duration pause) {
+        Assert.notNull(start, "start cannot be null");
+        Assert.notNull(end, "end cannot be null");
+        Assert.notNull(pause, "pause cannot be null");
+        this.tieringWindowStart = start;
+        this.tieringWindowEnd = end;
+        this.tieringPause = pause;
+        return this;
+    }
+
+    /**
+     * Configures an index template - an index built on every new partition before it is attached. Partitions are
+     * always created with {@link PartitionCreationMode#ATTACH} when index templates are configured, and indexes of
+     * the parent table are built on new partitions after templates, except for parent indexes equivalent to a template.
+     *
+     * @param suffix - suffix of index name, appended to partition name
+     * @param definition - index definition following the table name, for example {@code (name)}
+     * @return partition config
+     */
+    public PartitionConfig index(String suffix, String definition) {
+        this.indexTemplates.add(new IndexTemplate(suffix, definition, false));
+        return this;
+    }
+
+    /**
+     * Configures a unique index template.
+     *
+     * @param suffix - suffix of index name, appended to partition name
+     * @param definition - index definition following the table name, for example {@code (id, created_at)}
+     * @return partition config
+     * @see #index(String, String)
+     */
+    public PartitionConfig uniqueIndex(String suffix, String definition) {
+        this.indexTemplates.add(new IndexTemplate(suffix, definition, true));
+        return this;
+    }
+
+    /**
+     * Configures analyzing the current and the previous partition, and the parent table, on refresh. Autovacuum
+     * analyzes a partition only after a fixed fraction of its rows changes, which takes long for a partition that is
+     * being filled, and it never analyzes the parent table. The parent table is analyzed with {@code ANALYZE ONLY},
+     * which requires Postgres 18 - on older versions only partitions are analyzed.
+     *
+     * @param threshold - fraction of rows that must be modified since the last ANALYZE, for example 0.05
+     * @param budget - time after which no further ANALYZE is started in a single refresh
+     * @return partition config
+     */
+    public PartitionConfig autoAnalyze(double threshold, Duration budget) {
+        Assert.isTrue(threshold >= 0, "threshold must not be negative");
+        Assert.notNull(budget, "budget cannot be null");
+        this.analyzeThreshold = threshold;
+        this.analyzeBudget = budget;
+        return this;
+    }
+
+    /**
+     * Configures a DEFAULT partition that stores rows that do not fit any other partition, drained with default batch
+     * size and pause. Partitions are always created with {@link PartitionCreationMode#ATTACH} when DEFAULT partition
+     * is configured, regardless of {@link #creationMode(PartitionCreationMode)}.
+     *
+     * @return partition config
+     * @see #defaultPartition(int, Duration)
+     */
+    public PartitionConfig defaultPartition() {
+        this.defaultPartition = true;
+        return this;
+    }
+
+    /**
+     * Configures a DEFAULT partition that stores rows that do not fit any other partition. Before a new partition is
+     * attached, rows that belong to it are moved out of the DEFAULT partition in batches of pages, with a pause between
+     * batches. Then a {@code NOT VALID} check constraint excluding the new range is added to the DEFAULT partition,
+     * rows inserted in the meantime are moved in a second pass, and the constraint is validated, which scans the DEFAULT
+     * partition without blocking reads and writes. With the constraint in place, attaching the partition does not scan
+     * the DEFAULT partition and holds ACCESS EXCLUSIVE lock on it only briefly. From adding the constraint until
+     * the partition is attached, inserts of rows of the new partition fail.
+     *
+     * Partitions are always created with {@link PartitionCreationMode#ATTACH} when DEFAULT partition is configured,
+     * regardless of {@link #creationMode(PartitionCreationMode)}.
+     *
+     * @param drainBatchPages - how many pages of the DEFAULT partition are drained in a single transaction
+     * @param drainPause - pause between batches
+     * @return partition config
+     */
+    public PartitionConfig defaultPartition(int drainBatchPages, Duration drainPause) {
+        Assert.isTrue(drainBatchPages > 0, "drainBatchPages must be greater than 0");
+        Assert.notNull(drainPause, "drainPause cannot be null");
+        this.defaultPartition = true;
+        this.drainBatchPages = drainBatchPages;
+        this.drainPause = drainPause;
+        return this;
+    }
+
     /**
      * Returns parent table name.
      *
@@ -130,4 +375,163 @@ public class PartitionConfig {
     public RetentionPolicy retentionPolicy() {
         return retentionPolicy;
     }
-}
\ No newline at end of file
+
+    /**
+     * Returns partition creation mode.
+     *
+     * @return creation mode
+     */
+    public PartitionCreationMode creationMode() {
+        return creationMode;
+    }
+
+    /**
+     * Returns tablespace for new partitions.
+     *
+     * @return tablespace name or null if partitions are created in the default tablespace
+     */
+    public String tablespace() {
+        return tablespace;
+    }
+
+    /**
+     * Returns tablespace tier for partitions of a given age.
+     *
+     * @param age - age in number of partitions of configured range type
+     * @return tablespace name or null if partitions of this age are not moved
+     */
+    public String tablespace(int age) {
+        Map.Entry<Integer, String> tier = tablespaceTiers.floorEntry(age);
+        return tier != null ? tier.getValue() : null;
+    }
+
+    /**
+     * Returns if any tablespace tiers are configured.
+     *
+     * @return true if partitions are moved between tablespaces
+     */
+    public boolean hasTablespaceTiers() {
+        return !tablespaceTiers.isEmpty();
+    }
+
+    /**
+     * Returns if partitions can be moved between tablespaces at a given time.
+     *
+     * @param time - time
+     * @return true if time is within tiering window
+     */
+    public boolean isWithinTieringWindow(LocalTime time) {
+        if (tieringWindowStart.isAfter(tieringWindowEnd)) {
+            return !time.isBefore(tieringWindowStart) || !time.isAfter(tieringWindowEnd);
+        }
+        return !time.isBefore(tieringWindowStart) && !time.isAfter(tieringWindowEnd);
+    }
+
+    /**
+     * Returns pause after moving a partition between tablespaces.
+     *
+     * @return tiering pause
+     */
+    public Duration tieringPause() {
+        return tieringPause;
+    }
+
+    /**
+     * Returns index templates built on new partitions before they are attached.
+     *
+     * @return index templates
+     */
+    public List<IndexTemplate> indexTemplates() {
+        return List.copyOf(indexTemplates);
+    }
+
+    /**
+     * Returns if partitions are analyzed on refresh.
+     *
+     * @return true if auto analyze is configured
+     */
+    public boolean hasAutoAnalyze() {
+        return analyzeBudget != null;
+    }
+
+    /**
+     * Returns fraction of rows that must be modified since the last ANALYZE to analyze a partition.
+     *
+     * @return analyze threshold
+     */
+    public double analyzeThreshold() {
+        return analyzeThreshold;
+    }
+
+    /**
+     * Returns maximum time spent on ANALYZE in a single refresh.
+     *
+     * @return analyze budget or null if auto analyze is not configured
+     */
+    public Duration analyzeBudget() {
+        return analyzeBudget;
+    }
+
+    /**
+     * Returns if DEFAULT partition is configured.
+     *
+     * @return true if DEFAULT partition is configured
+     */
+    public boolean hasDefaultPartition() {
+        return defaultPartition;
+    }
+
+    /**
+     * Returns how many pages of the DEFAULT partition are drained in a single transaction.
+     *
+     * @return drain batch pages
+     */
+    public int drainBatchPages() {
+        return drainBatchPages;
+    }
+
+    /**
+     * Returns pause between batches of rows moved out of the DEFAULT partition.
+     *
+     * @return drain pause
+     */
+    public Duration drainPause() {
+        return drainPause;
+    }
+
+    /**
+     * Returns maximum total size of partitions in bytes.
+     *
+     * @return retention budget in bytes, {@link Long#MAX_VALUE} if not limited
+     */
+    public long retentionBytes() {
+        return retentionBytes;
+    }
+
+    /**
+     * Returns maximum estimated number of rows in partitions.
+     *
+     * @return retention budget in rows, {@link Long#MAX_VALUE} if not limited
+     */
+    public long retentionRows() {
+        return retentionRows;
+    }
+
+    /**
+     * Returns if retention is limited by size or number of rows.
+     *
+     * @return true if retention budget is configured
+     */
+    public boolean hasRetentionBudget() {
+        return retentionBytes != Long.MAX_VALUE || retentionRows != Long.MAX_VALUE;
+    }
+
+    /**
+     * Returns directory to store archived partitions in.
+     *
+     * @return archive directory or null if not configured
+     */
+    public Path archiveDirectory() {
+        return archiveDirectory;
+    }
+}
@@ -0,0 +1,22 @@
+package com.maciejwalkowiak.jpartitioner.core;
+
+/**
+ * Defines how new partitions are created.
+ *
+ * @author Maciej Walkowiak
+ */
+public enum PartitionCreationMode {
+    /**
+     * Creates partition with {@code CREATE TABLE ... PARTITION OF}, which takes an ACCESS EXCLUSIVE lock on the parent
+     * table and blocks all reads and writes to the parent table until the partition is created.
+     */
+    PARTITION_OF,
+
+    /**
+     * Creates a standalone table with the structure of the parent table and a check constraint matching partition
+     * bounds, and then attaches it with {@code ALTER TABLE ... ATTACH PARTITION}. Attaching takes only a SHARE UPDATE
+     * EXCLUSIVE lock on the parent table, so writes to the parent table are not blocked, and the check constraint
+     * lets Postgres skip scanning the table to validate the partition constraint.
+     */
+    ATTACH
+}
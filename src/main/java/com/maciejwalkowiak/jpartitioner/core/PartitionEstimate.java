@@ -0,0 +1,14 @@
+package com.maciejwalkowiak.jpartitioner.core;
+
+/**
+ * Estimated cost of creating or removing a partition, based on catalog statistics.
+ *
+ * @author Maciej Walkowiak
+ * @param partition - partition
+ * @param totalBytes - size of the partition including indexes and TOAST, 0 if partition does not exist yet
+ * @param estimatedRows - number of rows estimated by the last ANALYZE or VACUUM, 0 if never analyzed
+ * @param indexes - number of indexes on the partition
+ * @param locksBusyParent - if the statement needs an ACCESS EXCLUSIVE lock on the parent table while other sessions hold locks on it
+ */
+public record PartitionEstimate(Partition partition, long totalBytes, long estimatedRows, int indexes, boolean locksBusyParent) {
+}
@@ -0,0 +1,416 @@
+package com.maciejwalkowiak.jpartitioner.core;
+
+import org.postgresql.PGConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.util.Assert;
+
+import java.io.CharArrayReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Bulk loads rows directly into partitions with {@code COPY ... FROM STDIN}, bypassing tuple routing of the parent table.
+ * Rows are buffered per partition and each buffer is flushed when it reaches configured number of rows or when
+ * the oldest row in it is older than flush interval. Routing a row to a partition is a binary search over sorted
+ * partition bounds. Rows that do not belong to any known partition are copied through the parent table, so that
+ * Postgres routes them - for example to the DEFAULT partition. Partition bounds are reloaded when a row does not
+ * belong to any known partition and at least every bounds refresh interval, so that rows are not copied to
+ * partitions detached by retention for longer than that interval.
+ *
+ * Instances are thread safe. A full buffer is copied by the thread that filled it, outside of the lock guarding
+ * buffers, so that other threads keep adding rows while it blocks. When a copy fails, its rows are dropped from
+ * the buffer and passed to the failure handler.
+ *
+ * @author Maciej Walkowiak
+ * @param <T> - type of ingested rows
+ */
+public class PartitionIngester<T> implements AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PartitionIngester.class);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PartitionRepository partitionRepository;
+    private final String tableName;
+    private final String columns;
+    private final Function<T, LocalDateTime> timestamp;
+    private final BiConsumer<T, Columns> columnWriter;
+    private int maxRows = 10_000;
+    private Duration flushInterval = Duration.ofSeconds(1);
+    private Duration boundsRefreshInterval = Duration.ofMinutes(1);
+    private Consumer<FailedRows> failureHandler = failedRows -> {
+        throw failedRows.exception();
+    };
+    private ScheduledExecutorService executor;
+
+    // bound index - partition at index i covers [starts[i], ends[i])
+    private long[] starts = new long[0];
+    private long[] ends = new long[0];
+    private Bucket[] buckets = new Bucket[0];
+    private final Bucket parentBucket;
+    private boolean boundsLoaded;
+    private long boundsLoadedAt;
+
+    /**
+     * Creates an ingester.
+     *
+     * @param jdbcTemplate - jdbc template used to copy rows
+     * @param partitionRepository - partition repository used to resolve partition bounds
+     * @param tableName - parent table name
+     * @param columns - copied columns
+     * @param timestamp - returns value of partition key of a row
+     * @param columnWriter - writes values of copied columns of a row, in the same order as columns
+     */
+    public PartitionIngester(JdbcTemplate jdbcTemplate, PartitionRepository partitionRepository, String tableName, List<String> columns,
+                             Function<T, LocalDateTime> timestamp, BiConsumer<T, Columns> columnWriter) {
+        Assert.notNull(jdbcTemplate, "jdbcTemplate must not be null");
+        Assert.notNull(partitionRepository, "partitionRepository must not be null");
+        Assert.notNull(tableName, "tableName must not be null");
+        Assert.notEmpty(columns, "columns must not be empty");
+        Assert.notNull(timestamp, "timestamp must not be null");
+        Assert.notNull(columnWriter, "columnWriter must not be null");
+        this.jdbcTemplate = jdbcTemplate;
+        this.partitionRepository = partitionRepository;
+        this.tableName = tableName;
+        this.columns = String.join(", ", columns);
+        this.timestamp = timestamp;
+        this.columnWriter = columnWriter;
+        this.parentBucket = new Bucket(tableName);
+    }
+
+    /**
+     * Configures how many rows are buffered per partition before the buffer is flushed.
+     *
+     * @param maxRows - maximum number of buffered rows per partition
+     * @return ingester
+     */
+    public PartitionIngester<T> maxRows(int maxRows) {
+        Assert.isTrue(maxRows > 0, "maxRows must be greater than 0");
+        this.maxRows = maxRows;
+        return this;
+    }
+
+    /**
+     * Configures how long rows can stay in a buffer when it does not fill up. Applies once {@link #start()} is called.
+     *
+     * @param flushInterval - maximum age of a buffered row
+     * @return ingester
+     */
+    public PartitionIngester<T> flushInterval(Duration flushInterval) {
+        Assert.notNull(flushInterval, "flushInterval must not be null");
+        Assert.isTrue(flushInterval.isPositive(), "flushInterval must be positive");
+        this.flushInterval = flushInterval;
+        return this;
+    }
+
+    /**
+     * Configures how often partition bounds are reloaded, even if every row belongs to a known partition.
+     *
+     * @param boundsRefreshInterval - maximum age of loaded partition bounds
+     * @return ingester
+     */
+    public PartitionIngester<T> boundsRefreshInterval(Duration boundsRefreshInterval) {
+        Assert.notNull(boundsRefreshInterval, "boundsRefreshInterval must not be null");
+        Assert.isTrue(boundsRefreshInterval.isPositive(), "boundsRefreshInterval must be positive");
+        this.boundsRefreshInterval = boundsRefreshInterval;
+        return this;
+    }
+
+    /**
+     * Configures handler of rows that failed to be copied. By default, the exception is rethrown to the thread that
+     * flushed the buffer and the rows are lost.
+     *
+     * @param failureHandler - receives rows that failed to be copied
+     * @return ingester
+     */
+    public PartitionIngester<T> onFailure(Consumer<FailedRows> failureHandler) {
+        Assert.notNull(failureHandler, "failureHandler must not be null");
+        this.failureHandler = failureHandler;
+        return this;
+    }
+
+    /**
+     * Starts flushing buffers with rows older than flush interval in the background.
+     */
+    public synchronized void start() {
+        Assert.state(executor == null, "Ingester is already started");
+        executor = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("partition-ingester-" + tableName).daemon().factory());
+        long period = Math.max(1, flushInterval.toMillis() / 2);
+        executor.scheduleWithFixedDelay(this::flushExpiredSafely, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Adds a row. Flushes the buffer of the row's partition if it is full.
+     *
+     * @param row - row to add
+     */
+    public void add(T row) {
+        Assert.notNull(row, "row must not be null");
+
+        Batch batch = append(row);
+        if (batch != null) {
+            copy(batch);
+        }
+    }
+
+    /**
+     * Adds all rows of a stream.
+     *
+     * @param rows - rows to add
+     */
+    public void addAll(Stream<T> rows) {
+        Assert.notNull(rows, "rows must not be null");
+
+        rows.forEach(this::add);
+    }
+
+    /**
+     * Flushes all buffers.
+     */
+    public void flush() {
+        List<Batch> batches;
+        synchronized (this) {
+            batches = Stream.concat(Arrays.stream(buckets), Stream.of(parentBucket))
+                    .filter(bucket -> bucket.rows > 0)
+                    .map(Bucket::take)
+                    .toList();
+        }
+        copyAll(batches);
+    }
+
+    /**
+     * Stops flushing in the background and flushes all buffers.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (executor != null) {
+                executor.shutdown();
+                executor = null;
+            }
+        }
+        flush();
+    }
+
+    private synchronized Batch append(T row) {
+        Bucket bucket = route(timestamp.apply(row).toEpochSecond(ZoneOffset.UTC));
+        Columns out = bucket.columns;
+        int rowStart = out.buffer.length();
+        out.first = true;
+        try {
+            columnWriter.accept(row, out);
+        } catch (RuntimeException e) {
+            // partially written row would corrupt the whole buffer
+            out.buffer.setLength(rowStart);
+            throw e;
+        }
+        out.buffer.append('\n');
+        if (bucket.rows++ == 0) {
+            bucket.firstRowAt = System.nanoTime();
+        }
+        return bucket.rows >= maxRows ? bucket.take() : null;
+    }
+
+    private Bucket route(long epochSecond) {
+        long boundsAge = System.nanoTime() - boundsLoadedAt;
+        int index = findBucket(epochSecond);
+        // partitions could have been created, or detached by retention, since bounds were loaded
+        if (!boundsLoaded || boundsAge > boundsRefreshInterval.toNanos() || (index < 0 && boundsAge > flushInterval.toNanos())) {
+            loadBounds();
+            index = findBucket(epochSecond);
+        }
+        return index >= 0 ? buckets[index] : parentBucket;
+    }
+
+    private int findBucket(long epochSecond) {
+        int index = Arrays.binarySearch(starts, epochSecond);
+        if (index < 0) {
+            // partition starting before the timestamp
+            index = -index - 2;
+        }
+        return index >= 0 && epochSecond < ends[index] ? index : -1;
+    }
+
+    private void loadBounds() {
+        List<Partition> partitions = partitionRepository.findPartitions(tableName).stream()
+                .sorted(Comparator.comparingLong(Partition::startEpochSecond))
+                .toList();
+        Map<String, Bucket> oldBuckets = new HashMap<>();
+        for (Bucket bucket : buckets) {
+            oldBuckets.put(bucket.tableName, bucket);
+        }
+        long[] newStarts = new long[partitions.size()];
+        long[] newEnds = new long[partitions.size()];
+        Bucket[] newBuckets = new Bucket[partitions.size()];
+        for (int i = 0; i < partitions.size(); i++) {
+            newStarts[i] = partitions.get(i).startEpochSecond();
+            newEnds[i] = partitions.get(i).endEpochSecond();
+            Bucket bucket = oldBuckets.remove(partitions.get(i).name());
+            newBuckets[i] = bucket != null ? bucket : new Bucket(partitions.get(i).name());
+        }
+        // rows buffered for partitions that are no longer attached are routed by Postgres
+        for (Bucket bucket : oldBuckets.values()) {
+            if (bucket.rows > 0) {
+                parentBucket.merge(bucket);
+            }
+        }
+        this.starts = newStarts;
+        this.ends = newEnds;
+        this.buckets = newBuckets;
+        this.boundsLoaded = true;
+        this.boundsLoadedAt = System.nanoTime();
+    }
+
+    private void flushExpired() {
+        List<Batch> batches;
+        synchronized (this) {
+            long now = System.nanoTime();
+            batches = Stream.concat(Arrays.stream(buckets), Stream.of(parentBucket))
+                    .filter(bucket -> bucket.rows > 0 && now - bucket.firstRowAt >= flushInterval.toNanos())
+                    .map(Bucket::take)
+                    .toList();
+        }
+        copyAll(batches);
+    }
+
+    private void flushExpiredSafely() {
+        try {
+            flushExpired();
+        } catch (RuntimeException e) {
+            LOGGER.error("Failed to flush rows to table {}", tableName, e);
+        }
+    }
+
+    /**
+     * Copies all batches, even if some of them fail. The first exception thrown by the failure handler is rethrown.
+     */
+    private void copyAll(List<Batch> batches) {
+        RuntimeException failure = null;
+        for (Batch batch : batches) {
+            try {
+                copy(batch);
+            } catch (RuntimeException e) {
+                if (failure == null) {
+                    failure = e;
+                } else if (failure != e) {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void copy(Batch batch) {
+        String sql = "COPY " + batch.tableName() + " (" + columns + ") FROM STDIN";
+        LOGGER.debug("Executing SQL: {}", sql);
+
+        try {
+            jdbcTemplate.execute((ConnectionCallback<Long>) connection -> {
+                try {
+                    long rows = connection.unwrap(PGConnection.class).getCopyAPI().copyIn(sql, new CharArrayReader(batch.chars()));
+                    if (!connection.getAutoCommit()) {
+                        connection.commit();
+                    }
+                    return rows;
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Failed to copy rows to " + batch.tableName(), e);
+                }
+            });
+        } catch (RuntimeException e) {
+            LOGGER.warn("Failed to copy {} rows to {}", batch.rows(), batch.tableName(), e);
+            failureHandler.accept(new FailedRows(batch.tableName(), new String(batch.chars()).lines().toList(), e));
+        }
+    }
+
+    private record Batch(String tableName, char[] chars, int rows) {
+    }
+
+    private static final class Bucket {
+        private final String tableName;
+        private final Columns columns = new Columns();
+        private int rows;
+        private long firstRowAt;
+
+        private Bucket(String tableName) {
+            this.tableName = tableName;
+        }
+
+        /**
+         * Removes buffered rows from the bucket.
+         */
+        private Batch take() {
+            char[] chars = new char[columns.buffer.length()];
+            columns.buffer.getChars(0, chars.length, chars, 0);
+            Batch batch = new Batch(tableName, chars, rows);
+            columns.buffer.setLength(0);
+            rows = 0;
+            return batch;
+        }
+
+        private void merge(Bucket other) {
+            if (rows == 0) {
+                firstRowAt = other.firstRowAt;
+            }
+            columns.buffer.append(other.columns.buffer);
+            rows += other.rows;
+        }
+    }
+
+    /**
+     * Writes column values of a row in {@code COPY} text format.
+     */
+    public static final class Columns {
+        private final StringBuilder buffer = new StringBuilder();
+        private boolean first;
+
+        private Columns() {
+        }
+
+        /**
+         * Writes the next column value. Values are written with {@link Object#toString()}, null is written as SQL NULL.
+         *
+         * @param value - column value
+         * @return columns
+         */
+        public Columns add(Object value) {
+            if (!first) {
+                buffer.append('\t');
+            }
+            first = false;
+            if (value == null) {
+                buffer.append("\\N");
+                return this;
+            }
+            String text = value.toString();
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                switch (c) {
+                    case '\\' -> buffer.append("\\\\");
+                    case '\n' -> buffer.append("\\n");
+                    case '\r' -> buffer.append("\\r");
+                    case '\t' -> buffer.append("\\t");
+                    default -> buffer.append(c);
+                }
+            }
+            return this;
+        }
+    }
+}
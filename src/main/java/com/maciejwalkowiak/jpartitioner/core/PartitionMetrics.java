@@ -0,0 +1,144 @@
+package com.maciejwalkowiak.jpartitioner.core;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Micrometer metrics recorded by {@link Partitions}:
+ * <ul>
+ *     <li>{@code jpartitioner.refresh} - timer of refreshing a table, tagged with {@code table} and {@code outcome}</li>
+ *     <li>{@code jpartitioner.ddl} - timer of DDL round-trips, tagged with {@code table}, {@code outcome} and {@code type} - create, attach, detach, drop,
+ *     analyze or other, resolved from the first statement of a round-trip that is not other</li>
+ *     <li>{@code jpartitioner.partitions.created}, {@code .detached}, {@code .dropped}, {@code .archived} - counters tagged with {@code table}</li>
+ *     <li>{@code jpartitioner.partitions} - gauge of partitions of a table after the last successful refresh</li>
+ *     <li>{@code jpartitioner.partitions.headroom} - gauge of partitions starting in the future - it decreases over time
+ *     when refreshes stop succeeding, and reaching 0 means inserts are about to fail</li>
+ * </ul>
+ *
+ * @author Maciej Walkowiak
+ */
+final class PartitionMetrics {
+    private static final String TABLE_TAG = "table";
+
+    private final MeterRegistry meterRegistry;
+    private final Clock clock;
+    // table name -> partitions after the last successful refresh, referenced by gauges
+    private final Map<String, TablePartitions> tables = new ConcurrentHashMap<>();
+
+    PartitionMetrics(MeterRegistry meterRegistry, Clock clock) {
+        this.meterRegistry = meterRegistry;
+        this.clock = clock;
+    }
+
+    void refreshed(PartitionConfig config, RefreshResult result, List<Partition> partitions) {
+        timer("jpartitioner.refresh", config.tableName(), "outcome", "success").record(result.duration());
+        recordDdl(config, result.statements());
+        counter("jpartitioner.partitions.created", config.tableName()).increment(result.added().size());
+        String removedCounter = switch (config.retentionPolicy()) {
+            case DETACH -> "jpartitioner.partitions.detached";
+            case DROP -> "jpartitioner.partitions.dropped";
+            case ARCHIVE -> "jpartitioner.partitions.archived";
+        };
+        counter(removedCounter, config.tableName()).increment(result.removed().size());
+
+        tables.computeIfAbsent(config.tableName(), this::registerGauges).update(partitions);
+    }
+
+    void refreshFailed(PartitionConfig config, List<DdlExecution> statements, Duration duration) {
+        timer("jpartitioner.refresh", config.tableName(), "outcome", "failure").record(duration);
+        recordDdl(config, statements);
+    }
+
+    private void recordDdl(PartitionConfig config, List<DdlExecution> statements) {
+        for (DdlExecution execution : statements) {
+            Timer.builder("jpartitioner.ddl")
+                    .tags(TABLE_TAG, config.tableName(), "type", ddlType(execution.statements()), "outcome", execution.failed() ? "failure" : "success")
+                    .register(meterRegistry)
+                    .record(execution.duration());
+        }
+    }
+
+    private TablePartitions registerGauges(String tableName) {
+        TablePartitions tablePartitions = new TablePartitions();
+        Gauge.builder("jpartitioner.partitions", tablePartitions, TablePartitions::count)
+                .description("Partitions of a table after the last successful refresh")
+                .tag(TABLE_TAG, tableName)
+                .register(meterRegistry);
+        Gauge.builder("jpartitioner.partitions.headroom", tablePartitions, it -> it.startingAfter(LocalDateTime.now(clock)))
+                .description("Partitions of a table that start in the future")
+                .tag(TABLE_TAG, tableName)
+                .register(meterRegistry);
+        return tablePartitions;
+    }
+
+    private Timer timer(String name, String tableName, String tagName, String tagValue) {
+        return Timer.builder(name)
+                .tags(TABLE_TAG, tableName, tagName, tagValue)
+                .register(meterRegistry);
+    }
+
+    private Counter counter(String name, String tableName) {
+        return Counter.builder(name)
+                .tag(TABLE_TAG, tableName)
+                .register(meterRegistry);
+    }
+
+    static String ddlType(List<String> sqls) {
+        // round-trips often start with statements like LOCK TABLE that precede the actual change
+        for (String sql : sqls) {
+            String type = ddlType(sql);
+            if (!type.equals("other")) {
+                return type;
+            }
+        }
+        return "other";
+    }
+
+    static String ddlType(String sql) {
+        String statement = sql.toUpperCase(Locale.ROOT);
+        if (statement.contains(" ATTACH PARTITION ")) {
+            return "attach";
+        } else if (statement.contains(" DETACH PARTITION ")) {
+            return "detach";
+        } else if (statement.startsWith("DROP TABLE")) {
+            return "drop";
+        } else if (statement.startsWith("CREATE TABLE")) {
+            return "create";
+        } else if (statement.startsWith("ANALYZE")) {
+            return "analyze";
+        }
+        return "other";
+    }
+
+    private static final class TablePartitions {
+        private volatile long[] starts = new long[0];
+
+        void update(List<Partition> partitions) {
+            this.starts = partitions.stream().mapToLong(Partition::startEpochSecond).sorted().toArray();
+        }
+
+        double count() {
+            return starts.length;
+        }
+
+        double startingAfter(LocalDateTime date) {
+            long[] current = this.starts;
+            int index = Arrays.binarySearch(current, date.toEpochSecond(ZoneOffset.UTC));
+            // first partition starting after the date
+            int first = index >= 0 ? index + 1 : -index - 1;
+            return current.length - first;
+        }
+    }
+}
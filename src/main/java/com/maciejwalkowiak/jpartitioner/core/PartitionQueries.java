@@ -0,0 +1,289 @@
+package com.maciejwalkowiak.jpartitioner.core;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.ArgumentPreparedStatementSetter;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.RowMapperResultSetExtractor;
+import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Runs a query against each partition of a table that overlaps a range of time, concurrently on virtual threads.
+ * Each partition is queried on its own connection, so that a scan of a long range is spread across multiple backends
+ * independently of Postgres parallel query settings. The DEFAULT partition is queried last, restricted to rows within
+ * the range of time.
+ *
+ * The query refers to the partition with {@value #PARTITION_PLACEHOLDER}, for example:
+ * <pre>
+ * SELECT name, count(*) FROM {partition} WHERE created_at &gt;= ? AND created_at &lt; ? GROUP BY name
+ * </pre>
+ *
+ * @author Maciej Walkowiak
+ */
+public class PartitionQueries {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PartitionQueries.class);
+
+    /**
+     * Placeholder replaced with partition name in queries.
+     */
+    public static final String PARTITION_PLACEHOLDER = "{partition}";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PartitionRepository partitionRepository;
+    private Semaphore permits;
+
+    /**
+     * Creates a fan-out query executor. Concurrency defaults to half of the connection pool size, so that fan-out
+     * queries do not starve the rest of the application of connections.
+     *
+     * @param jdbcTemplate - jdbc template used to query partitions
+     * @param partitionRepository - partition repository used to resolve partitions
+     */
+    public PartitionQueries(JdbcTemplate jdbcTemplate, PartitionRepository partitionRepository) {
+        Assert.notNull(jdbcTemplate, "jdbcTemplate must not be null");
+        Assert.notNull(partitionRepository, "partitionRepository must not be null");
+        this.jdbcTemplate = jdbcTemplate;
+        this.partitionRepository = partitionRepository;
+        this.permits = new Semaphore(defaultMaxConcurrency(jdbcTemplate));
+    }
+
+    private static int defaultMaxConcurrency(JdbcTemplate jdbcTemplate) {
+        // HikariCP is optional - applications may use any connection pool
+        if (ClassUtils.isPresent("com.zaxxer.hikari.HikariDataSource", PartitionQueries.class.getClassLoader())
+                && jdbcTemplate.getDataSource() instanceof HikariDataSource dataSource) {
+            return Math.max(1, dataSource.getMaximumPoolSize() / 2);
+        }
+        return 4;
+    }
+
+    /**
+     * Configures how many partitions are queried at the same time, across all concurrent calls.
+     *
+     * @param maxConcurrency - maximum number of concurrent queries, should not exceed the connection pool size
+     * @return partition queries
+     */
+    public PartitionQueries maxConcurrency(int maxConcurrency) {
+        Assert.isTrue(maxConcurrency > 0, "maxConcurrency must be greater than 0");
+        this.permits = new Semaphore(maxConcurrency);
+        return this;
+    }
+
+    /**
+     * Resolves partitions of a table that overlap a range of time.
+     *
+     * @param tableName - parent table name
+     * @param from - beginning of the range (inclusive)
+     * @param to - end of the range (exclusive)
+     * @return partitions sorted by range
+     */
+    public List<Partition> findPartitions(String tableName, LocalDateTime from, LocalDateTime to) {
+        Assert.notNull(tableName, "tableName must not be null");
+        Assert.notNull(from, "from must not be null");
+        Assert.notNull(to, "to must not be null");
+        Assert.isTrue(!from.isAfter(to), "from must not be after to");
+
+        return partitionRepository.findPartitions(tableName).stream()
+                .filter(it -> it.start().isBefore(to) && it.end().isAfter(from))
+                .sorted(Comparator.comparing(Partition::start))
+                .toList();
+    }
+
+    /**
+     * Queries partitions overlapping a range of time concurrently and merges results in the order of partitions.
+     *
+     * @param tableName - parent table name
+     * @param from - beginning of the range (inclusive)
+     * @param to - end of the range (exclusive)
+     * @param sql - query with {@value #PARTITION_PLACEHOLDER} placeholder
+     * @param rowMapper - row mapper
+     * @param args - query arguments
+     * @param <T> - type of results
+     * @return results of all partitions
+     */
+    public <T> List<T> query(String tableName, LocalDateTime from, LocalDateTime to, String sql, RowMapper<T> rowMapper, Object... args) {
+        List<T> results = new ArrayList<>();
+        fanOut(tableName, from, to, sql, rowMapper, results::addAll, args);
+        return results;
+    }
+
+    /**
+     * Queries partitions overlapping a range of time concurrently and passes results of each partition to a consumer
+     * in the order of partitions, as soon as they are available. The consumer is invoked by the calling thread. When
+     * the consumer throws, queries that are still running are cancelled.
+     *
+     * @param tableName - parent table name
+     * @param from - beginning of the range (inclusive)
+     * @param to - end of the range (exclusive)
+     * @param sql - query with {@value #PARTITION_PLACEHOLDER} placeholder
+     * @param rowMapper - row mapper
+     * @param consumer - consumer of results
+     * @param args - query arguments
+     * @param <T> - type of results
+     */
+    public <T> void stream(String tableName, LocalDateTime from, LocalDateTime to, String sql, RowMapper<T> rowMapper, Consumer<T> consumer, Object... args) {
+        Assert.notNull(consumer, "consumer must not be null");
+
+        fanOut(tableName, from, to, sql, rowMapper, partitionResults -> partitionResults.forEach(consumer), args);
+    }
+
+    private <T> void fanOut(String tableName, LocalDateTime from, LocalDateTime to, String sql, RowMapper<T> rowMapper, Consumer<List<T>> partitionConsumer, Object... args) {
+        Assert.notNull(sql, "sql must not be null");
+        Assert.isTrue(sql.contains(PARTITION_PLACEHOLDER), "sql must contain " + PARTITION_PLACEHOLDER + " placeholder");
+        Assert.notNull(rowMapper, "rowMapper must not be null");
+
+        List<String> tables = new ArrayList<>(findPartitions(tableName, from, to).stream().map(Partition::name).toList());
+        String defaultPartition = defaultPartition(tableName, from, to);
+        if (defaultPartition != null) {
+            tables.add(defaultPartition);
+        }
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            FanOut<T> fanOut = new FanOut<>(executor);
+            List<Future<List<T>>> futures = tables.stream()
+                    .map(table -> executor.submit(() -> fanOut.query(sql.replace(PARTITION_PLACEHOLDER, table), rowMapper, args)))
+                    .toList();
+            try {
+                for (Future<List<T>> future : futures) {
+                    partitionConsumer.accept(fanOut.await(future));
+                }
+            } finally {
+                // no-op when all queries completed, otherwise stops queries nobody waits for anymore
+                fanOut.cancel();
+            }
+        }
+    }
+
+    /**
+     * Returns the DEFAULT partition of a table restricted to a range of time, as a subquery aliased with the name of
+     * the partition, or null if the table has no DEFAULT partition.
+     */
+    private String defaultPartition(String tableName, LocalDateTime from, LocalDateTime to) {
+        String sql = """
+                SELECT
+                    child.relname AS name,
+                    pg_get_partkeydef(parent.oid) AS partition_key
+                FROM
+                    pg_inherits
+                JOIN
+                    pg_class parent ON pg_inherits.inhparent = parent.oid
+                JOIN
+                    pg_class child ON pg_inherits.inhrelid = child.oid
+                WHERE
+                    parent.relname = ?
+                  AND pg_get_expr(child.relpartbound, child.oid) = 'DEFAULT'
+                """;
+
+        LOGGER.debug("Executing SQL: {}", sql);
+
+        return jdbcTemplate.query(sql, (rs, rowNum) -> {
+                    String name = rs.getString("name");
+                    String partitionKeyDefinition = rs.getString("partition_key");
+                    // RANGE (created_at) -> created_at
+                    String key = partitionKeyDefinition.substring("RANGE (".length(), partitionKeyDefinition.length() - 1);
+                    return "(SELECT * FROM " + name + " WHERE (" + key + ") >= '" + from.format(DateTimeFormatter.ISO_DATE_TIME)
+                            + "' AND (" + key + ") < '" + to.format(DateTimeFormatter.ISO_DATE_TIME) + "') AS " + name;
+                }, tableName)
+                .stream()
+                .findFirst()
+                .orElse(null);
+    }
+
+    /**
+     * Queries of a single fan-out. The first failed query cancels all others, so that a failure is reported
+     * without waiting for queries of preceding partitions.
+     */
+    private final class FanOut<T> {
+        private final ExecutorService executor;
+        // permits are shared by all fan-outs, so that concurrent calls together stay within the limit
+        private final Semaphore permits = PartitionQueries.this.permits;
+        private final Set<Statement> runningStatements = ConcurrentHashMap.newKeySet();
+        private final AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        private volatile boolean cancelled;
+
+        private FanOut(ExecutorService executor) {
+            this.executor = executor;
+        }
+
+        private List<T> query(String sql, RowMapper<T> rowMapper, Object... args) throws InterruptedException {
+            permits.acquire();
+            try {
+                return jdbcTemplate.execute((ConnectionCallback<List<T>>) connection -> {
+                    try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                        runningStatements.add(statement);
+                        try {
+                            // checked after registering the statement, so that cancel() either sees it or is seen here
+                            if (cancelled) {
+                                throw new CancellationException("Query of partitions was cancelled");
+                            }
+                            new ArgumentPreparedStatementSetter(args).setValues(statement);
+                            try (ResultSet rs = statement.executeQuery()) {
+                                return new RowMapperResultSetExtractor<>(rowMapper).extractData(rs);
+                            }
+                        } finally {
+                            runningStatements.remove(statement);
+                        }
+                    }
+                });
+            } catch (RuntimeException e) {
+                if (failure.compareAndSet(null, e)) {
+                    cancel();
+                }
+                throw e;
+            } finally {
+                permits.release();
+            }
+        }
+
+        private List<T> await(Future<List<T>> future) {
+            try {
+                return future.get();
+            } catch (ExecutionException | CancellationException e) {
+                if (failure.get() != null) {
+                    throw failure.get();
+                }
+                Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+                throw cause instanceof RuntimeException ex ? ex : new RuntimeException("Failed to query partition", cause);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while querying partitions", e);
+            }
+        }
+
+        private void cancel() {
+            cancelled = true;
+            // interrupts queries waiting for a permit
+            executor.shutdownNow();
+            for (Statement statement : runningStatements) {
+                try {
+                    statement.cancel();
+                } catch (SQLException e) {
+                    LOGGER.debug("Failed to cancel statement", e);
+                }
+            }
+        }
+    }
+}
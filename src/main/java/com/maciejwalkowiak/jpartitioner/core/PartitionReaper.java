@@ -0,0 +1,216 @@
+package com.maciejwalkowiak.jpartitioner.core;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.util.Assert;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drops detached partitions queued by {@link JdbcPartitionRepository#deferDrops(boolean)} in the background, so that
+ * dropping large partitions does not cause I/O and WAL bursts. Each run drops at most configured number of tables and
+ * bytes, the oldest partitions first, one table at a time with a pause in between. The queue is stored in the database
+ * as a comment on queued tables, so queued drops survive restarts and can be processed by any application instance.
+ * A run is guarded by an advisory lock, so that only one instance drops tables at a time - the lock is held by
+ * a connection kept for the duration of the run, while each table is dropped on a connection borrowed just for the drop.
+ *
+ * @author Maciej Walkowiak
+ */
+public class PartitionReaper implements AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PartitionReaper.class);
+    static final String PENDING_DROP_COMMENT = "jpartitioner:pending-drop";
+    // first key of two-key advisory lock, next to the namespaces used by PartitionRefreshScheduler
+    private static final int LOCK_NAMESPACE = 0x6a700003;
+
+    private final JdbcTemplate jdbcTemplate;
+    private Duration interval = Duration.ofMinutes(10);
+    private int maxTables = 1;
+    private long maxBytes = Long.MAX_VALUE;
+    private Duration pause = Duration.ZERO;
+    private ScheduledExecutorService executor;
+
+    /**
+     * Creates a reaper.
+     *
+     * @param jdbcTemplate - jdbc template used to drop tables
+     */
+    public PartitionReaper(JdbcTemplate jdbcTemplate) {
+        Assert.notNull(jdbcTemplate, "jdbcTemplate must not be null");
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Configures how often queued tables are dropped.
+     *
+     * @param interval - delay between the end of a run and the start of the next one
+     * @return reaper
+     */
+    public PartitionReaper interval(Duration interval) {
+        Assert.notNull(interval, "interval must not be null");
+        Assert.isTrue(interval.isPositive(), "interval must be positive");
+        this.interval = interval;
+        return this;
+    }
+
+    /**
+     * Configures rate limit of a single run. The first table is always dropped, even if it exceeds the byte limit.
+     *
+     * @param maxTables - maximum number of tables dropped in a run
+     * @param maxBytes - maximum total size of tables dropped in a run
+     * @param pause - pause between dropping two tables
+     * @return reaper
+     */
+    public PartitionReaper rateLimit(int maxTables, long maxBytes, Duration pause) {
+        Assert.isTrue(maxTables > 0, "maxTables must be greater than 0");
+        Assert.isTrue(maxBytes > 0, "maxBytes must be greater than 0");
+        Assert.notNull(pause, "pause must not be null");
+        this.maxTables = maxTables;
+        this.maxBytes = maxBytes;
+        this.pause = pause;
+        return this;
+    }
+
+    /**
+     * Starts dropping queued tables in the background.
+     */
+    public synchronized void start() {
+        Assert.state(executor == null, "Reaper is already started");
+        executor = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("partition-reaper").daemon().factory());
+        executor.scheduleWithFixedDelay(this::reapSafely, 0, interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops dropping tables. A drop that is in progress is completed, the pause after it is interrupted.
+     */
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    @Override
+    public void close() {
+        stop();
+    }
+
+    /**
+     * Drops queued tables within the rate limit, the oldest partition first. Does nothing if another instance is
+     * dropping tables at the same time.
+     *
+     * @return names of dropped tables
+     */
+    public List<String> reapNow() {
+        DataSource dataSource = jdbcTemplate.getDataSource();
+        Assert.state(dataSource != null, "jdbcTemplate must have a data source");
+
+        try (Connection lockConnection = dataSource.getConnection()) {
+            // advisory lock is held by the session - autocommit prevents keeping a transaction open during the run
+            lockConnection.setAutoCommit(true);
+            if (!executeLockFunction(lockConnection, "pg_try_advisory_lock")) {
+                LOGGER.debug("Queued tables are dropped by another instance, skipping");
+                return List.of();
+            }
+            try {
+                return reap();
+            } finally {
+                executeLockFunction(lockConnection, "pg_advisory_unlock");
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to drop queued tables", e);
+        }
+    }
+
+    private List<String> reap() {
+        List<String> dropped = new ArrayList<>();
+        long droppedBytes = 0;
+        for (QueuedTable table : findQueuedTables()) {
+            if (dropped.size() >= maxTables || (!dropped.isEmpty() && droppedBytes + table.bytes() > maxBytes)) {
+                break;
+            }
+            if (!dropped.isEmpty()) {
+                try {
+                    Thread.sleep(pause);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            LOGGER.info("Dropping table {} of size {} bytes", table.qualifiedName(), table.bytes());
+            // each drop borrows a connection from the pool, so that no connection is held during the pause
+            jdbcTemplate.execute("DROP TABLE IF EXISTS " + table.qualifiedName());
+            dropped.add(table.name());
+            droppedBytes += table.bytes();
+        }
+        return dropped;
+    }
+
+    private void reapSafely() {
+        try {
+            reapNow();
+        } catch (RuntimeException e) {
+            LOGGER.error("Failed to drop queued tables", e);
+        }
+    }
+
+    private List<QueuedTable> findQueuedTables() {
+        String sql = """
+                SELECT
+                    c.relname AS name,
+                    format('%%I.%%I', ns.nspname, c.relname) AS qualified_name,
+                    pg_total_relation_size(c.oid) AS bytes
+                FROM
+                    pg_class c
+                JOIN
+                    pg_namespace ns ON c.relnamespace = ns.oid
+                JOIN
+                    pg_description d ON d.objoid = c.oid AND d.classoid = 'pg_class'::regclass AND d.objsubid = 0
+                WHERE
+                    c.relkind = 'r'
+                  AND c.relispartition IS false
+                  AND d.description = '%s'
+                """.formatted(PENDING_DROP_COMMENT);
+
+        LOGGER.debug("Executing SQL: {}", sql);
+
+        return jdbcTemplate.query(sql, (rs, rowNum) -> new QueuedTable(rs.getString("name"), rs.getString("qualified_name"), rs.getLong("bytes")))
+                .stream()
+                // partitions of all parent tables ordered by the beginning of their range
+                .sorted(Comparator.comparing(QueuedTable::start).thenComparing(QueuedTable::name))
+                .toList();
+    }
+
+    private static boolean executeLockFunction(Connection connection, String function) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT " + function + "(?, 0)")) {
+            statement.setInt(1, LOCK_NAMESPACE);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() && resultSet.getBoolean(1);
+            }
+        }
+    }
+
+    private record QueuedTable(String name, String qualifiedName, long bytes) {
+
+        LocalDateTime start() {
+            try {
+                return Partition.of(name).start();
+            } catch (RuntimeException e) {
+                // tables queued by hand that are not named like partitions are dropped first
+                return LocalDateTime.MIN;
+            }
+        }
+    }
+}
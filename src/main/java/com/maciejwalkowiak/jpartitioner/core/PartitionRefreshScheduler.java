@@ -0,0 +1,313 @@
+package com.maciejwalkowiak.jpartitioner.core;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.util.Assert;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Periodically refreshes partitions of registered tables. Safe to run on many application instances connected to the
+ * same database - before refreshing, the scheduler acquires Postgres advisory locks with {@code pg_try_advisory_lock},
+ * so that DDL for a table is executed by only one instance at a time. Instances that fail to acquire a lock skip the
+ * refresh without waiting and, when refreshing at range boundaries, check again after the configured interval.
+ *
+ * @author Maciej Walkowiak
+ */
+public class PartitionRefreshScheduler implements AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PartitionRefreshScheduler.class);
+    // first key of two-key advisory locks, so that locks do not collide with advisory locks taken by the application
+    private static final int GLOBAL_LOCK_NAMESPACE = 0x6a700001;
+    // seed of 64-bit table lock keys - hashed by Postgres, so that the key does not depend on the JVM or driver
+    private static final int TABLE_LOCK_NAMESPACE = 0x6a700002;
+
+    private final Partitions partitions;
+    private final JdbcTemplate jdbcTemplate;
+    private final List<PartitionConfig> configs;
+    private Duration interval = Duration.ofHours(1);
+    private LockScope lockScope = LockScope.GLOBAL;
+    private boolean deadlineDriven;
+    private Clock clock = Clock.systemDefaultZone();
+    private ScheduledExecutorService executor;
+    private ScheduledFuture<?> nextRefresh;
+    // set when a refresh is triggered while another one is in progress
+    private final AtomicBoolean triggered = new AtomicBoolean();
+
+    /**
+     * Creates a scheduler.
+     *
+     * @param partitions - partitions used to refresh tables
+     * @param jdbcTemplate - jdbc template used to acquire advisory locks
+     * @param configs - configs of tables to refresh
+     */
+    public PartitionRefreshScheduler(Partitions partitions, JdbcTemplate jdbcTemplate, Collection<PartitionConfig> configs) {
+        Assert.notNull(partitions, "partitions must not be null");
+        Assert.notNull(jdbcTemplate, "jdbcTemplate must not be null");
+        Assert.notNull(configs, "configs must not be null");
+        this.partitions = partitions;
+        this.jdbcTemplate = jdbcTemplate;
+        this.configs = List.copyOf(configs);
+    }
+
+    /**
+     * Configures how often partitions are refreshed.
+     *
+     * @param interval - delay between the end of a refresh and the start of the next one
+     * @return scheduler
+     */
+    public PartitionRefreshScheduler interval(Duration interval) {
+        Assert.notNull(interval, "interval must not be null");
+        Assert.isTrue(interval.isPositive(), "interval must be positive");
+        this.interval = interval;
+        return this;
+    }
+
+    /**
+     * Configures if a single lock guards all tables or if each table is guarded by its own lock.
+     *
+     * @param lockScope - lock scope
+     * @return scheduler
+     */
+    public PartitionRefreshScheduler lockScope(LockScope lockScope) {
+        Assert.notNull(lockScope, "lockScope must not be null");
+        this.lockScope = lockScope;
+        return this;
+    }
+
+    /**
+     * Configures refreshing partitions when expected partitions change instead of every {@link #interval(Duration)}.
+     * After each refresh, the scheduler sleeps until the beginning of the next range of any table, as computed by
+     * {@link Partitions#nextChange(LocalDateTime, PartitionConfig)}, without querying the catalog in between.
+     * The delay is computed in the time zone of the clock, so that daylight saving time transitions do not shift
+     * refreshes. The interval still applies to retrying failed refreshes, to refreshes skipped because another
+     * instance holds the lock and to tables with retention budget, tablespace tiers or auto analyze, which depend
+     * on data rather than on time. Partitions changed outside of this library are picked up after {@link #trigger()}.
+     *
+     * @param deadlineDriven - true to refresh at range boundaries
+     * @return scheduler
+     */
+    public PartitionRefreshScheduler deadlineDriven(boolean deadlineDriven) {
+        this.deadlineDriven = deadlineDriven;
+        return this;
+    }
+
+    PartitionRefreshScheduler clock(Clock clock) {
+        Assert.notNull(clock, "clock must not be null");
+        this.clock = clock;
+        return this;
+    }
+
+    /**
+     * Starts refreshing partitions in the background. The first refresh is executed immediately.
+     */
+    public synchronized void start() {
+        Assert.state(executor == null, "Scheduler is already started");
+        executor = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("partition-refresh").daemon().factory());
+        if (deadlineDriven) {
+            schedule(Duration.ZERO);
+        } else {
+            executor.scheduleWithFixedDelay(this::refreshSafely, 0, interval.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Refreshes partitions in the background as soon as possible, for example after partitions were changed outside
+     * of this library. With {@link #deadlineDriven(boolean)}, the next refresh is scheduled again after it completes.
+     */
+    public synchronized void trigger() {
+        Assert.state(executor != null, "Scheduler is not started");
+        if (deadlineDriven) {
+            triggered.set(true);
+            schedule(Duration.ZERO);
+        } else {
+            executor.execute(this::refreshSafely);
+        }
+    }
+
+    /**
+     * Stops refreshing partitions. A refresh that is in progress is interrupted.
+     */
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+            nextRefresh = null;
+        }
+    }
+
+    @Override
+    public void close() {
+        stop();
+    }
+
+    /**
+     * Refreshes partitions of tables for which this instance acquired the advisory lock.
+     *
+     * @return report of refreshed tables - tables locked by other instances are not included
+     */
+    public RefreshReport refreshNow() {
+        return refresh().report();
+    }
+
+    private Refresh refresh() {
+        return jdbcTemplate.execute((ConnectionCallback<Refresh>) connection -> {
+            boolean originalAutoCommit = connection.getAutoCommit();
+            // advisory locks are held by the session - autocommit prevents keeping a transaction open during refresh
+            connection.setAutoCommit(true);
+            try {
+                List<PartitionConfig> lockedConfigs = tryLock(connection);
+                if (lockedConfigs.isEmpty()) {
+                    LOGGER.debug("Partitions are refreshed by another instance, skipping");
+                    return new Refresh(new RefreshReport(List.of(), List.of()), false);
+                }
+                try {
+                    return new Refresh(partitions.refreshAll(lockedConfigs), lockedConfigs.size() == configs.size());
+                } finally {
+                    unlock(connection, lockedConfigs);
+                }
+            } finally {
+                connection.setAutoCommit(originalAutoCommit);
+            }
+        });
+    }
+
+    private void refreshSafely() {
+        try {
+            RefreshReport report = refreshNow();
+            if (report.hasFailures()) {
+                LOGGER.warn("Failed to refresh partitions for {} tables", report.failures().size());
+            }
+        } catch (RuntimeException e) {
+            LOGGER.error("Failed to refresh partitions", e);
+        }
+    }
+
+    private void refreshAndSchedule() {
+        triggered.set(false);
+        Duration delay = interval;
+        try {
+            Refresh refresh = refresh();
+            if (refresh.report().hasFailures()) {
+                LOGGER.warn("Failed to refresh partitions for {} tables, retrying in {}", refresh.report().failures().size(), interval);
+            } else if (!refresh.allLocked()) {
+                // the instance holding the lock may fail or be stopped before it refreshes partitions
+                LOGGER.debug("Partitions are refreshed by another instance, checking again in {}", interval);
+            } else {
+                delay = untilNextChange();
+            }
+        } catch (RuntimeException e) {
+            LOGGER.error("Failed to refresh partitions, retrying in {}", interval, e);
+        }
+        schedule(triggered.get() ? Duration.ZERO : delay);
+    }
+
+    Duration untilNextChange() {
+        // range boundaries are local date times - the duration between zoned date times accounts for DST transitions
+        ZonedDateTime now = ZonedDateTime.now(clock);
+        Duration delay = null;
+        for (PartitionConfig config : configs) {
+            // changes of data dependent configs cannot be computed upfront
+            boolean dataDependent = config.hasRetentionBudget() || config.hasTablespaceTiers() || config.hasAutoAnalyze();
+            Duration untilChange = dataDependent ? interval : Duration.between(now, partitions.nextChange(now.toLocalDateTime(), config).atZone(clock.getZone()));
+            if (delay == null || untilChange.compareTo(delay) < 0) {
+                delay = untilChange;
+            }
+        }
+        return delay == null ? interval : delay.isNegative() ? Duration.ZERO : delay;
+    }
+
+    private synchronized void schedule(Duration delay) {
+        if (executor == null) {
+            return;
+        }
+        if (nextRefresh != null) {
+            nextRefresh.cancel(false);
+        }
+        LOGGER.debug("Next partition refresh in {}", delay);
+        nextRefresh = executor.schedule(this::refreshAndSchedule, delay.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private List<PartitionConfig> tryLock(Connection connection) throws SQLException {
+        if (lockScope == LockScope.GLOBAL) {
+            return executeLockFunction(connection, "pg_try_advisory_lock", GLOBAL_LOCK_NAMESPACE, 0) ? configs : List.of();
+        }
+        List<PartitionConfig> lockedConfigs = new ArrayList<>();
+        for (PartitionConfig config : configs) {
+            if (executeTableLockFunction(connection, "pg_try_advisory_lock", config.tableName())) {
+                lockedConfigs.add(config);
+            } else {
+                LOGGER.debug("Table {} is refreshed by another instance, skipping", config.tableName());
+            }
+        }
+        return lockedConfigs;
+    }
+
+    private void unlock(Connection connection, List<PartitionConfig> lockedConfigs) throws SQLException {
+        if (lockScope == LockScope.GLOBAL) {
+            executeLockFunction(connection, "pg_advisory_unlock", GLOBAL_LOCK_NAMESPACE, 0);
+        } else {
+            for (PartitionConfig config : lockedConfigs) {
+                executeTableLockFunction(connection, "pg_advisory_unlock", config.tableName());
+            }
+        }
+    }
+
+    private static boolean executeLockFunction(Connection connection, String function, int namespace, int key) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT " + function + "(?, ?)")) {
+            statement.setInt(1, namespace);
+            statement.setInt(2, key);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() && resultSet.getBoolean(1);
+            }
+        }
+    }
+
+    /**
+     * Locks a table with a single 64-bit key computed with {@code hashtextextended} - single-key locks do not collide
+     * with two-key locks, so the global lock and table locks are independent.
+     */
+    private static boolean executeTableLockFunction(Connection connection, String function, String tableName) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT " + function + "(hashtextextended(?, ?))")) {
+            statement.setString(1, tableName);
+            statement.setLong(2, TABLE_LOCK_NAMESPACE);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() && resultSet.getBoolean(1);
+            }
+        }
+    }
+
+    private record Refresh(RefreshReport report, boolean allLocked) {
+    }
+
+    /**
+     * Defines what is guarded by an advisory lock.
+     */
+    public enum LockScope {
+        /**
+         * Single lock for all tables - only one instance refreshes partitions at a time.
+         */
+        GLOBAL,
+
+        /**
+         * Lock per table - instances can refresh different tables at the same time.
+         */
+        TABLE
+    }
+}
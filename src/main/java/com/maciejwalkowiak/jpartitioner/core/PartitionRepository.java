@@ -1,5 +1,6 @@
 package com.maciejwalkowiak.jpartitioner.core;
 
+import java.nio.file.Path;
 import java.util.List;
 
 /**
@@ -36,4 +37,167 @@ public interface PartitionRepository {
      * @param partitions - list of partitions to add.
      */
     void createPartitions(List<Partition> partitions);
+
+    /**
+     * Creates partitions as standalone tables with the structure of the parent table and a check constraint matching
+     * partition bounds, without attaching them to the parent table.
+     *
+     * @param partitions - list of partitions to create
+     * @param copyIndexes - if indexes of the parent table are copied, false when indexes are built with
+     *                    {@link #createIndexes(Partition, List)} instead
+     */
+    void createDetachedPartitions(List<Partition> partitions, boolean copyIndexes);
+
+    /**
+     * Builds indexes on a partition created with {@link #createDetachedPartitions(List, boolean)}, followed by indexes
+     * of the parent table that no index template replaces, so that attaching the partition only links them. The
+     * partition is not attached yet, so indexes are built without {@code CONCURRENTLY}.
+     *
+     * @param partition - detached partition
+     * @param indexTemplates - indexes to build
+     */
+    void createIndexes(Partition partition, List<IndexTemplate> indexTemplates);
+
+    /**
+     * Attaches partitions created with {@link #createDetachedPartitions(List, boolean)} to the parent table and drops
+     * the check constraint that is no longer needed.
+     *
+     * @param partitions - list of partitions to attach
+     */
+    void attachPartitions(List<Partition> partitions);
+
+    /**
+     * Detaches partitions, streams their rows to compressed files in the archive directory and drops them once
+     * the number of archived rows is verified. Partitions are marked before they are detached, so that tables left
+     * detached by a failed run are never dropped without archive and are archived again by the next call.
+     *
+     * @param partitions - partitions to archive
+     * @param archiveDirectory - directory to store archives in
+     */
+    void archivePartitions(List<Partition> partitions, Path archiveDirectory);
+
+    /**
+     * Recreates a partition from an archive created with {@link #archivePartitions(List, Path)}, builds indexes
+     * matching indexes of the parent table once rows are loaded and attaches it to the parent table.
+     *
+     * @param partition - partition to restore
+     * @param archiveDirectory - directory archives are stored in
+     */
+    void restorePartition(Partition partition, Path archiveDirectory);
+
+    /**
+     * Creates a DEFAULT partition for a parent table if it does not exist yet.
+     *
+     * @param parentTableName - parent table name
+     */
+    void createDefaultPartition(String parentTableName);
+
+    /**
+     * Returns the number of pages of the DEFAULT partition of a parent table.
+     *
+     * @param parentTableName - parent table name
+     * @return number of pages, 0 if there is no DEFAULT partition
+     */
+    long countDefaultPartitionPages(String parentTableName);
+
+    /**
+     * Moves rows that belong to the partition and are stored in a range of pages of the DEFAULT partition to
+     * the partition created with {@link #createDetachedPartitions(List, boolean)}, in a single transaction.
+     *
+     * @param partition - partition to move rows to
+     * @param firstPage - first page of the DEFAULT partition to move rows from
+     * @param pages - number of pages to move rows from
+     * @return number of moved rows
+     */
+    int moveRowsFromDefaultPartition(Partition partition, long firstPage, int pages);
+
+    /**
+     * Adds a {@code NOT VALID} check constraint excluding the range of the partition to the DEFAULT partition. From
+     * now on, inserts of rows of the partition fail until the partition is attached with
+     * {@link #attachPartitionFromDefault(Partition)}, while rows already stored in the DEFAULT partition are kept.
+     *
+     * @param partition - partition to exclude
+     */
+    void excludeFromDefaultPartition(Partition partition);
+
+    /**
+     * Validates the constraint added with {@link #excludeFromDefaultPartition(Partition)}, which scans the DEFAULT
+     * partition without blocking reads and writes, then attaches the partition - which thanks to the constraint does
+     * not scan the DEFAULT partition again - and drops the constraint. Fails if the DEFAULT partition still contains
+     * rows of the partition.
+     *
+     * @param partition - partition to attach
+     */
+    void attachPartitionFromDefault(Partition partition);
+
+    /**
+     * Moves a partition and its indexes to a tablespace, one relation at a time. Does nothing if partition is already
+     * stored in the tablespace. Each relation is rewritten while holding an {@code ACCESS EXCLUSIVE} lock on it, which
+     * blocks all reads and writes of the partition, including queries of the parent table that scan it.
+     *
+     * @param partition - partition to move
+     * @param tablespace - tablespace name
+     * @return true if anything was moved
+     */
+    boolean moveToTablespace(Partition partition, String tablespace);
+
+    /**
+     * Returns partitions with enough rows modified since the last ANALYZE to make their statistics stale.
+     *
+     * @param partitions - partitions to check
+     * @param threshold - fraction of rows that must be modified
+     * @return partitions to analyze
+     */
+    List<Partition> findPartitionsToAnalyze(List<Partition> partitions, double threshold);
+
+    /**
+     * Collects statistics of a table. For a parent table, plain {@code ANALYZE} also analyzes every partition - use
+     * {@link #analyzeParent(String)} to collect only statistics of the parent table.
+     *
+     * @param tableName - table name
+     */
+    void analyze(String tableName);
+
+    /**
+     * Collects inheritance statistics of a parent table, sampled from all partitions, without analyzing each
+     * partition with {@code ANALYZE ONLY}. Postgres older than 18 does not support {@code ANALYZE ONLY}, and as
+     * {@code ANALYZE} of a parent table would analyze the whole hierarchy, nothing is analyzed.
+     *
+     * @param parentTableName - parent table name
+     * @return true if the parent table was analyzed
+     */
+    boolean analyzeParent(String parentTableName);
+
+    /**
+     * Estimates cost of creating or removing partitions of a single parent table from catalog statistics.
+     *
+     * @param partitions - partitions of the same parent table
+     * @param exclusiveParentLock - if creating or removing the partitions takes an ACCESS EXCLUSIVE lock on the parent table
+     * @return estimates in the same order as partitions
+     */
+    List<PartitionEstimate> estimatePartitions(List<Partition> partitions, boolean exclusiveParentLock);
+
+    /**
+     * Binds a dedicated database session to the current thread. Statements executed by the current thread run in
+     * this session until {@link #endSession()} is called.
+     */
+    default void beginSession() {
+    }
+
+    /**
+     * Releases the session bound to the current thread with {@link #beginSession()}.
+     *
+     * @return DDL statements executed in the session
+     */
+    default List<DdlExecution> endSession() {
+        return List.of();
+    }
+
+    /**
+     * Stores partitions and indexes created in the current session in a tablespace. Reset by {@link #endSession()}.
+     *
+     * @param tablespace - tablespace name
+     */
+    default void useTablespace(String tablespace) {
+    }
 }
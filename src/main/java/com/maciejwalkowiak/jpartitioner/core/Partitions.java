@@ -1,10 +1,28 @@
 package com.maciejwalkowiak.jpartitioner.core;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.util.Assert;
 
+import java.time.Clock;
+import java.time.Duration;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
-import java.util.stream.IntStream;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Stream;
 
 /**
  * Manages creating and dropping partitions according to {@link PartitionConfig}.
@@ -12,20 +30,63 @@ import java.util.stream.IntStream;
  * @author Maciej Walkowiak
  */
 public class Partitions {
+    private static final Logger LOGGER = LoggerFactory.getLogger(Partitions.class);
+    private static final int DEFAULT_MAX_CONCURRENCY = 4;
+
     private final PartitionRepository partitionRepository;
+    private final int maxConcurrency;
+    private PartitionMetrics metrics;
+    private Clock clock = Clock.systemDefaultZone();
 
     public Partitions(PartitionRepository partitionRepository) {
+        this(partitionRepository, DEFAULT_MAX_CONCURRENCY);
+    }
+
+    /**
+     * Creates partitions manager.
+     *
+     * @param partitionRepository - partition repository
+     * @param maxConcurrency - how many tables can be refreshed at the same time by {@link #refreshAll(Collection)}. Should not exceed the connection pool size.
+     */
+    public Partitions(PartitionRepository partitionRepository, int maxConcurrency) {
         Assert.notNull(partitionRepository, "partitionRepository must not be null");
+        Assert.isTrue(maxConcurrency > 0, "maxConcurrency must be greater than 0");
         this.partitionRepository = partitionRepository;
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    /**
+     * Enables recording Micrometer metrics - timers of refreshes and DDL statements by type, counters of created and
+     * removed partitions and gauges of partition count and future partitions headroom, all tagged with table name.
+     *
+     * @param meterRegistry - meter registry
+     * @return partitions manager
+     */
+    public Partitions meterRegistry(MeterRegistry meterRegistry) {
+        return meterRegistry(meterRegistry, clock);
+    }
+
+    Partitions meterRegistry(MeterRegistry meterRegistry, Clock clock) {
+        Assert.notNull(meterRegistry, "meterRegistry must not be null");
+        Assert.notNull(clock, "clock must not be null");
+        this.metrics = new PartitionMetrics(meterRegistry, clock);
+        return this;
+    }
+
+    Partitions clock(Clock clock) {
+        Assert.notNull(clock, "clock must not be null");
+        this.clock = clock;
+        return this;
     }
 
     /**
      * Refreshes partitions in the database according to a config for a current date.
      *
      * @param config - partitions config
+     * @return refresh result
      */
-    public void refresh(PartitionConfig config) {
-        refresh(LocalDate.now(), config);
+    public RefreshResult refresh(PartitionConfig config) {
+        return refresh(LocalDateTime.now(), config);
     }
 
     /**
@@ -33,50 +94,476 @@ public class Partitions {
      *
      * @param date - point in time as a reference to partition config
      * @param config - partition config
+     * @return refresh result
+     */
+    public RefreshResult refresh(LocalDate date, PartitionConfig config) {
+        Assert.notNull(date, "date must not be null");
+
+        return refresh(date.atStartOfDay(), config);
+    }
+
+    /**
+     * Refreshes partitions in the database according to a config for a given point in time.
+     *
+     * @param date - point in time as a reference to partition config
+     * @param config - partition config
+     * @return refresh result
+     */
+    public RefreshResult refresh(LocalDateTime date, PartitionConfig config) {
+        Assert.notNull(date, "date must not be null");
+        Assert.notNull(config, "config must not be null");
+
+        long start = System.nanoTime();
+        List<Partition> expectedPartitions = expectedPartitions(config, date);
+        List<Partition> existingPartitions;
+        PartitionChangeset changeset;
+        List<DdlExecution> statements;
+        boolean refreshed = false;
+        partitionRepository.beginSession();
+        try {
+            if (config.tablespace() != null) {
+                partitionRepository.useTablespace(config.tablespace());
+            }
+            existingPartitions = findPartitions(config);
+            changeset = changeset(config, date, existingPartitions, expectedPartitions);
+            apply(config, changeset);
+            if (config.hasTablespaceTiers()) {
+                moveToTablespaceTiers(config, expectedPartitions, new HashSet<>(changeset.applyTo(existingPartitions)));
+            }
+            if (config.hasAutoAnalyze()) {
+                analyze(config, date, new HashSet<>(changeset.remove()));
+            }
+            refreshed = true;
+        } finally {
+            statements = partitionRepository.endSession();
+            if (!refreshed && metrics != null) {
+                metrics.refreshFailed(config, statements, Duration.ofNanos(System.nanoTime() - start));
+            }
+        }
+        RefreshResult result = new RefreshResult(config.tableName(), changeset.remove(), changeset.add(), statements, Duration.ofNanos(System.nanoTime() - start));
+        if (metrics != null) {
+            metrics.refreshed(config, result, changeset.applyTo(existingPartitions));
+        }
+        return result;
+    }
+
+    /**
+     * Computes changes that {@link #refresh(LocalDateTime, PartitionConfig)} would apply for a given point in time,
+     * with estimated cost of each change, without executing any DDL.
+     *
+     * @param date - point in time as a reference to partition config
+     * @param config - partition config
+     * @return refresh plan
+     */
+    public RefreshPlan plan(LocalDateTime date, PartitionConfig config) {
+        Assert.notNull(date, "date must not be null");
+        Assert.notNull(config, "config must not be null");
+
+        PartitionChangeset changeset = changeset(config, date, findPartitions(config), expectedPartitions(config, date));
+        // DETACH CONCURRENTLY and ATTACH take a SHARE UPDATE EXCLUSIVE lock, but detaching when default partition
+        // exists and CREATE TABLE .. PARTITION OF block all queries on the parent table
+        boolean exclusiveRemove = config.hasDefaultPartition();
+        boolean exclusiveAdd = !createsByAttaching(config);
+        return new RefreshPlan(config.tableName(), config.retentionPolicy(),
+                partitionRepository.estimatePartitions(changeset.remove(), exclusiveRemove),
+                partitionRepository.estimatePartitions(changeset.add(), exclusiveAdd));
+    }
+
+    /**
+     * Computes changes that {@link #refresh(LocalDate, PartitionConfig)} would apply for a given date.
+     *
+     * @param date - point in time as a reference to partition config
+     * @param config - partition config
+     * @return refresh plan
+     * @see #plan(LocalDateTime, PartitionConfig)
+     */
+    public RefreshPlan plan(LocalDate date, PartitionConfig config) {
+        Assert.notNull(date, "date must not be null");
+
+        return plan(date.atStartOfDay(), config);
+    }
+
+    /**
+     * Returns the point in time when partitions expected by a config change next - the beginning of the next range,
+     * when a new partition enters the buffer and the oldest one falls out of retention. If any partition expected at
+     * a given date is missing in the database, for example because it was dropped outside of this library or the last
+     * refresh failed, the change is due immediately and the given date is returned. Retention budget, tablespace
+     * tiering and auto analyze depend on data and are not bound to range boundaries.
+     *
+     * @param date - point in time as a reference to partition config
+     * @param config - partition config
+     * @return given date if expected partitions are missing, beginning of the next range otherwise
+     */
+    public LocalDateTime nextChange(LocalDateTime date, PartitionConfig config) {
+        Assert.notNull(date, "date must not be null");
+        Assert.notNull(config, "config must not be null");
+
+        List<Partition> existingPartitions = partitionRepository.findPartitions(config.tableName());
+        if (!diff(existingPartitions, expectedPartitions(config, date)).add().isEmpty()) {
+            return date;
+        }
+        return config.rangeType().plus(config.rangeType().truncate(date), 1);
+    }
+
+    /**
+     * Refreshes partitions of multiple tables for a current date.
+     *
+     * @param configs - partition configs
+     * @return report with results and failures for each table
+     * @see #refreshAll(LocalDateTime, Collection)
      */
-    public void refresh(LocalDate date, PartitionConfig config) {
+    public RefreshReport refreshAll(Collection<PartitionConfig> configs) {
+        return refreshAll(LocalDateTime.now(), configs);
+    }
+
+    /**
+     * Refreshes partitions of multiple tables for a given date.
+     *
+     * @param date - point in time as a reference to partition configs
+     * @param configs - partition configs
+     * @return report with results and failures for each table
+     * @see #refreshAll(LocalDateTime, Collection)
+     */
+    public RefreshReport refreshAll(LocalDate date, Collection<PartitionConfig> configs) {
+        Assert.notNull(date, "date must not be null");
+
+        return refreshAll(date.atStartOfDay(), configs);
+    }
+
+    /**
+     * Refreshes partitions of multiple tables for a given point in time. Tables are refreshed concurrently on virtual threads,
+     * with at most {@code maxConcurrency} tables at the same time. A failure to refresh one table does not stop
+     * refreshing the others - it is recorded in the returned report.
+     *
+     * @param date - point in time as a reference to partition configs
+     * @param configs - partition configs
+     * @return report with results and failures for each table
+     */
+    public RefreshReport refreshAll(LocalDateTime date, Collection<PartitionConfig> configs) {
         Assert.notNull(date, "date must not be null");
+        Assert.notNull(configs, "configs must not be null");
+
+        Semaphore permits = new Semaphore(maxConcurrency);
+        List<RefreshResult> results = new ArrayList<>();
+        List<RefreshFailure> failures = new ArrayList<>();
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<RefreshResult>> futures = configs.stream()
+                    .map(config -> executor.submit(() -> {
+                        permits.acquire();
+                        try {
+                            return refresh(date, config);
+                        } finally {
+                            permits.release();
+                        }
+                    }))
+                    .toList();
+
+            int i = 0;
+            for (PartitionConfig config : configs) {
+                try {
+                    results.add(futures.get(i++).get());
+                } catch (ExecutionException e) {
+                    LOGGER.error("Failed to refresh partitions for table: {}", config.tableName(), e.getCause());
+                    failures.add(new RefreshFailure(config.tableName(), e.getCause() instanceof Exception ex ? ex : e));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    failures.add(new RefreshFailure(config.tableName(), e));
+                }
+            }
+        }
+        return new RefreshReport(List.copyOf(results), List.copyOf(failures));
+    }
+
+    /**
+     * Restores archived partitions covering a given range of time and attaches them to the parent table. Partitions
+     * that already exist are skipped. Nothing is restored unless archives of all other partitions in the range exist.
+     * Restored partitions older than configured retention are removed again on the next refresh.
+     *
+     * @param config - partition config with archive directory
+     * @param from - beginning of the range (inclusive)
+     * @param to - end of the range (exclusive)
+     * @return restored partitions
+     */
+    public List<Partition> restore(PartitionConfig config, LocalDateTime from, LocalDateTime to) {
         Assert.notNull(config, "config must not be null");
+        Assert.notNull(from, "from must not be null");
+        Assert.notNull(to, "to must not be null");
+        Assert.state(config.archiveDirectory() != null, "archiveDirectory must be configured to restore partitions");
 
-        PartitionChangeset changeset = diff(date, config);
+        List<Partition> restored = new ArrayList<>();
+        partitionRepository.beginSession();
+        try {
+            List<Partition> existingPartitions = partitionRepository.findPartitions(config.tableName());
+            List<Partition> toRestore = new ArrayList<>();
+            for (LocalDateTime date = config.rangeType().truncate(from); date.isBefore(to); date = config.rangeType().plus(date, 1)) {
+                Partition partition = Partition.of(config.tableName(), config.rangeType(), date);
+                if (existingPartitions.contains(partition)) {
+                    LOGGER.info("Partition {} already exists, skipping restore", partition.name());
+                } else {
+                    toRestore.add(partition);
+                }
+            }
+            // fail before restoring anything rather than leave the range restored partially
+            List<String> missing = toRestore.stream()
+                    .filter(partition -> !PartitionArchive.of(partition, config.archiveDirectory()).exists())
+                    .map(Partition::name)
+                    .toList();
+            if (!missing.isEmpty()) {
+                throw new IllegalStateException("Archives of partitions " + missing + " not found in " + config.archiveDirectory());
+            }
+            for (Partition partition : toRestore) {
+                partitionRepository.restorePartition(partition, config.archiveDirectory());
+                restored.add(partition);
+            }
+        } finally {
+            partitionRepository.endSession();
+        }
+        return restored;
+    }
+
+    private void apply(PartitionConfig config, PartitionChangeset changeset) {
         if (config.retentionPolicy() == RetentionPolicy.DETACH) {
             partitionRepository.detachPartitions(changeset.remove());
         } else if (config.retentionPolicy() == RetentionPolicy.DROP) {
             partitionRepository.dropPartitions(changeset.remove());
-        };
-        partitionRepository.createPartitions(changeset.add());
+        } else if (config.retentionPolicy() == RetentionPolicy.ARCHIVE) {
+            Assert.state(config.archiveDirectory() != null, "archiveDirectory must be configured for ARCHIVE retention policy");
+            partitionRepository.archivePartitions(changeset.remove(), config.archiveDirectory());
+        }
+        if (config.hasDefaultPartition()) {
+            partitionRepository.createDefaultPartition(config.tableName());
+            changeset.add().forEach(partition -> createPartitionDrainingDefault(config, partition));
+        } else if (createsByAttaching(config)) {
+            partitionRepository.createDetachedPartitions(changeset.add(), config.indexTemplates().isEmpty());
+            changeset.add().forEach(partition -> createIndexes(config, partition));
+            partitionRepository.attachPartitions(changeset.add());
+        } else {
+            partitionRepository.createPartitions(changeset.add());
+        }
+    }
+
+    /**
+     * Moves partitions that reached the age of a tablespace tier, one at a time, while within the tiering window.
+     */
+    private void moveToTablespaceTiers(PartitionConfig config, List<Partition> expectedPartitions, Set<Partition> existingPartitions) {
+        // expected partitions start with the oldest one, which is retention partitions old
+        for (int i = 0; i < expectedPartitions.size(); i++) {
+            Partition partition = expectedPartitions.get(i);
+            String tablespace = config.tablespace(config.retention() - i);
+            if (tablespace == null || !existingPartitions.contains(partition)) {
+                continue;
+            }
+            if (!config.isWithinTieringWindow(LocalTime.now(clock))) {
+                LOGGER.info("Tiering window of table {} is closed, remaining partitions are moved on the next refresh", config.tableName());
+                return;
+            }
+            if (partitionRepository.moveToTablespace(partition, tablespace)) {
+                LOGGER.info("Moved partition {} to tablespace {}", partition.name(), tablespace);
+                pause(config.tieringPause());
+            }
+        }
+    }
+
+    /**
+     * Analyzes the current and the previous partition when enough rows were modified since their last ANALYZE, and
+     * then inheritance statistics of the parent table with {@code ANALYZE ONLY}, so that the planner does not rely on
+     * statistics of empty partitions. Stops when the time budget is exhausted.
+     */
+    private void analyze(PartitionConfig config, LocalDateTime date, Set<Partition> removed) {
+        long start = System.nanoTime();
+        LocalDateTime currentPartitionStart = config.rangeType().truncate(date);
+        List<Partition> candidates = Stream.of(config.rangeType().plus(currentPartitionStart, -1), currentPartitionStart)
+                .map(it -> Partition.of(config.tableName(), config.rangeType(), it))
+                .filter(it -> !removed.contains(it))
+                .toList();
+
+        List<Partition> partitionsToAnalyze = partitionRepository.findPartitionsToAnalyze(candidates, config.analyzeThreshold());
+        for (Partition partition : partitionsToAnalyze) {
+            if (isBudgetExhausted(config, start)) {
+                return;
+            }
+            partitionRepository.analyze(partition.name());
+        }
+        // inheritance statistics sample all partitions, so they are refreshed only when a partition changed
+        if (!partitionsToAnalyze.isEmpty() && !isBudgetExhausted(config, start)) {
+            partitionRepository.analyzeParent(config.tableName());
+        }
+    }
+
+    private static boolean isBudgetExhausted(PartitionConfig config, long start) {
+        if (System.nanoTime() - start > config.analyzeBudget().toNanos()) {
+            LOGGER.info("ANALYZE budget of table {} is exhausted, remaining tables are analyzed on the next refresh", config.tableName());
+            return true;
+        }
+        return false;
+    }
+
+    private void createPartitionDrainingDefault(PartitionConfig config, Partition partition) {
+        // index templates replace indexes copied from the parent table and are built once rows are moved
+        partitionRepository.createDetachedPartitions(List.of(partition), config.indexTemplates().isEmpty());
+        // the default partition keeps accepting rows of the partition while it is drained in batches
+        drainDefaultPartition(config, partition);
+        createIndexes(config, partition);
+        // from now until the partition is attached, inserts of its rows fail - rows inserted during the first pass
+        // are moved by the second one, which cannot miss rows as no new ones are accepted
+        partitionRepository.excludeFromDefaultPartition(partition);
+        drainDefaultPartition(config, partition);
+        partitionRepository.attachPartitionFromDefault(partition);
+    }
+
+    private void createIndexes(PartitionConfig config, Partition partition) {
+        if (!config.indexTemplates().isEmpty()) {
+            partitionRepository.createIndexes(partition, config.indexTemplates());
+        }
+    }
+
+    private static boolean createsByAttaching(PartitionConfig config) {
+        return config.hasDefaultPartition() || config.creationMode() == PartitionCreationMode.ATTACH || !config.indexTemplates().isEmpty();
+    }
+
+    /**
+     * Moves rows of a partition out of the DEFAULT partition in batches of pages, so that each batch reads only its
+     * own pages. The last batch has no upper bound, so that it includes pages added since the drain started.
+     */
+    private void drainDefaultPartition(PartitionConfig config, Partition partition) {
+        long pages = partitionRepository.countDefaultPartitionPages(config.tableName());
+        for (long firstPage = 0; firstPage == 0 || firstPage < pages; firstPage += config.drainBatchPages()) {
+            boolean last = firstPage + config.drainBatchPages() >= pages;
+            int moved = partitionRepository.moveRowsFromDefaultPartition(partition, firstPage, last ? Integer.MAX_VALUE : config.drainBatchPages());
+            if (moved > 0) {
+                LOGGER.info("Moved {} rows from default partition to {}", moved, partition.name());
+                if (!last) {
+                    pause(config.drainPause());
+                }
+            }
+        }
+    }
+
+    private static void pause(Duration duration) {
+        try {
+            Thread.sleep(duration);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while pausing", e);
+        }
     }
 
-    private PartitionChangeset diff(LocalDate date, PartitionConfig config) {
+    private List<Partition> findPartitions(PartitionConfig config) {
         List<Partition> existingPartitions = partitionRepository.findPartitions(config.tableName());
         existingPartitions.forEach(it -> it.validate(config));
+        return existingPartitions;
+    }
 
-        List<Partition> expectedPartitions = this.expectedPartitions(config, date);
+    private PartitionChangeset changeset(PartitionConfig config, LocalDateTime date, List<Partition> existingPartitions, List<Partition> expectedPartitions) {
+        PartitionChangeset changeset = diff(existingPartitions, expectedPartitions);
+        return config.hasRetentionBudget() ? applyRetentionBudget(config, date, existingPartitions, changeset) : changeset;
+    }
 
-        List<Partition> partitionsToDrop = existingPartitions
-                .stream()
-                .filter(it -> !expectedPartitions.contains(it))
+    /**
+     * Removes the oldest past partitions that exceed retention budget. Sizes of all kept partitions are estimated
+     * with a single catalog query and accumulated from the newest partition to the oldest one.
+     *
+     * Partitions removed by the budget are still within the count based retention, so past partitions older than
+     * the oldest kept partition are not created - otherwise the next refresh would recreate removed partitions.
+     */
+    private PartitionChangeset applyRetentionBudget(PartitionConfig config, LocalDateTime date, List<Partition> existingPartitions, PartitionChangeset changeset) {
+        Set<Partition> removed = new HashSet<>(changeset.remove());
+        List<Partition> keptNewestFirst = existingPartitions.stream()
+                .filter(it -> !removed.contains(it))
+                .sorted(Comparator.comparing(Partition::start).reversed())
                 .toList();
+        LocalDateTime currentPartitionStart = config.rangeType().truncate(date);
 
-        List<Partition> partitionsToAdd = expectedPartitions.stream()
-                .filter(it -> !existingPartitions.contains(it))
+        List<Partition> partitionsToRemove = new ArrayList<>(changeset.remove());
+        long bytes = 0;
+        long rows = 0;
+        LocalDateTime oldestKeptStart = null;
+        for (PartitionEstimate estimate : partitionRepository.estimatePartitions(keptNewestFirst, false)) {
+            bytes += estimate.totalBytes();
+            rows += estimate.estimatedRows();
+            if ((bytes > config.retentionBytes() || rows > config.retentionRows()) && estimate.partition().start().isBefore(currentPartitionStart)) {
+                LOGGER.info("Partition {} exceeds retention budget of table {}", estimate.partition().name(), config.tableName());
+                partitionsToRemove.add(estimate.partition());
+            } else {
+                oldestKeptStart = estimate.partition().start();
+            }
+        }
+        if (keptNewestFirst.isEmpty()) {
+            return new PartitionChangeset(partitionsToRemove, changeset.add());
+        }
+        LocalDateTime firstCreatedStart = oldestKeptStart != null && oldestKeptStart.isBefore(currentPartitionStart) ? oldestKeptStart : currentPartitionStart;
+        List<Partition> partitionsToAdd = changeset.add().stream()
+                .filter(it -> !it.start().isBefore(firstCreatedStart))
                 .toList();
+        return new PartitionChangeset(partitionsToRemove, partitionsToAdd);
+    }
+
+    /**
+     * Computes partitions to remove and to add by comparing precomputed bounds of partitions - as all of them belong
+     * to the same parent table and have the same range type, the beginning of partition range identifies a partition.
+     * Lookups are binary searches over sorted arrays of epoch seconds, so no intermediate objects are created per
+     * partition and the order of both lists is preserved in the changeset.
+     *
+     * @param existingPartitions - partitions that exist in the database
+     * @param expectedPartitions - partitions that should exist
+     * @return changeset
+     */
+    static PartitionChangeset diff(List<Partition> existingPartitions, List<Partition> expectedPartitions) {
+        long[] existingStarts = sortedStarts(existingPartitions);
+        long[] expectedStarts = sortedStarts(expectedPartitions);
+
+        List<Partition> partitionsToDrop = new ArrayList<>();
+        for (Partition partition : existingPartitions) {
+            if (Arrays.binarySearch(expectedStarts, partition.startEpochSecond()) < 0) {
+                partitionsToDrop.add(partition);
+            }
+        }
+
+        List<Partition> partitionsToAdd = new ArrayList<>();
+        for (Partition partition : expectedPartitions) {
+            if (Arrays.binarySearch(existingStarts, partition.startEpochSecond()) < 0) {
+                partitionsToAdd.add(partition);
+            }
+        }
         return new PartitionChangeset(partitionsToDrop, partitionsToAdd);
     }
 
-    private List<Partition> expectedPartitions(PartitionConfig config, LocalDate date) {
-        return IntStream.range(-config.retention(), config.buffer())
-                .mapToObj(i -> Partition.of(config.tableName(), config.rangeType(), partitionDate(config, date, i)))
-                .toList();
+    private static long[] sortedStarts(List<Partition> partitions) {
+        long[] starts = new long[partitions.size()];
+        boolean sorted = true;
+        for (int i = 0; i < starts.length; i++) {
+            starts[i] = partitions.get(i).startEpochSecond();
+            sorted &= i == 0 || starts[i - 1] <= starts[i];
+        }
+        if (!sorted) {
+            Arrays.sort(starts);
+        }
+        return starts;
     }
 
-    private LocalDate partitionDate(PartitionConfig config, LocalDate date, int i) {
-        return switch (config.rangeType()) {
-            case DAILY -> date.plusDays(i);
-            case MONTHLY -> date.plusMonths(i);
-        };
+    static List<Partition> expectedPartitions(PartitionConfig config, LocalDateTime date) {
+        List<Partition> partitions = new ArrayList<>(Math.max(0, config.retention() + config.buffer()));
+        for (int i = -config.retention(); i < config.buffer(); i++) {
+            partitions.add(Partition.of(config.tableName(), config.rangeType(), partitionDate(config, date, i)));
+        }
+        return partitions;
     }
 
-    private record PartitionChangeset(List<Partition> remove, List<Partition> add) {
+    private static LocalDateTime partitionDate(PartitionConfig config, LocalDateTime date, int i) {
+        return config.rangeType().plus(config.rangeType().truncate(date), i);
+    }
+
+    record PartitionChangeset(List<Partition> remove, List<Partition> add) {
+
+        /**
+         * Returns partitions that exist once the changeset is applied to existing partitions.
+         */
+        List<Partition> applyTo(List<Partition> existingPartitions) {
+            Set<Partition> removed = new HashSet<>(remove);
+            return Stream.concat(existingPartitions.stream().filter(it -> !removed.contains(it)), add.stream())
+                    .sorted(Comparator.comparing(Partition::start))
+                    .toList();
+        }
     }
 }
@@ -0,0 +1,213 @@
+package com.maciejwalkowiak.jpartitioner.core;
+
+import io.r2dbc.spi.Batch;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.Result;
+import org.reactivestreams.Publisher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * {@link ReactivePartitionRepository} on top of an R2DBC {@link ConnectionFactory}, for applications that do not have
+ * a JDBC connection pool. Statements are never executed on a blocked thread - DDL of a single operation is sent
+ * to the database as one batch, and operations executed with {@link #inSession(Mono)} share a single connection.
+ *
+ * @author Maciej Walkowiak
+ */
+public class R2dbcPartitionRepository implements ReactivePartitionRepository {
+    private static final Logger LOGGER = LoggerFactory.getLogger(R2dbcPartitionRepository.class);
+
+    private final ConnectionFactory connectionFactory;
+    private Duration lockTimeout = Duration.ZERO;
+
+    public R2dbcPartitionRepository(ConnectionFactory connectionFactory) {
+        Assert.notNull(connectionFactory, "connectionFactory must not be null");
+        this.connectionFactory = connectionFactory;
+    }
+
+    /**
+     * Configures {@code lock_timeout} of the session executing DDL statements.
+     *
+     * @param lockTimeout - lock timeout, {@link Duration#ZERO} waits indefinitely
+     * @return r2dbc partition repository
+     */
+    public R2dbcPartitionRepository lockTimeout(Duration lockTimeout) {
+        Assert.notNull(lockTimeout, "lockTimeout must not be null");
+        this.lockTimeout = lockTimeout;
+        return this;
+    }
+
+    @Override
+    public Mono<List<DdlExecution>> inSession(Mono<Void> operations) {
+        Assert.notNull(operations, "operations must not be null");
+
+        return Mono.deferContextual(context -> {
+            if (context.hasKey(DdlSession.class)) {
+                return Mono.error(new IllegalStateException("Session is already bound to the current subscriber"));
+            }
+            // session settings are restored also when operations fail or are cancelled, before the connection is
+            // returned to the pool
+            return Mono.usingWhen(connectionFactory.create(),
+                    connection -> Mono.usingWhen(begin(new DdlSession(connection)),
+                            session -> operations
+                                    .then(Mono.fromSupplier(() -> List.copyOf(session.executions)))
+                                    .contextWrite(it -> it.put(DdlSession.class, session)),
+                            this::end,
+                            (session, error) -> end(session),
+                            this::end),
+                    Connection::close);
+        });
+    }
+
+    @Override
+    public Flux<Partition> findPartitions(String tableName) {
+        Assert.notNull(tableName, "tableName must not be null");
+
+        String sql = """
+                SELECT
+                    child.relname AS name
+                FROM
+                    pg_inherits
+                JOIN
+                    pg_class parent ON pg_inherits.inhparent = parent.oid
+                JOIN
+                    pg_class child ON pg_inherits.inhrelid = child.oid
+                WHERE
+                    parent.relname = $1
+                  AND pg_get_expr(child.relpartbound, child.oid) <> 'DEFAULT'
+                """;
+
+        LOGGER.debug("Executing SQL: {}", sql);
+
+        return withSession(session -> Flux.from(session.connection.createStatement(sql).bind(0, tableName).execute())
+                .flatMap(result -> result.map((row, metadata) -> Partition.of(row.get("name", String.class)))))
+                .sort(Comparator.comparing(Partition::name));
+    }
+
+    @Override
+    public Mono<Void> detachPartitions(List<Partition> partitions) {
+        Assert.notNull(partitions, "partitions must not be null");
+
+        // CONCURRENTLY cannot run in a transaction - a batch of multiple statements runs in an implicit one
+        return withSession(session -> Flux.fromIterable(partitions)
+                .concatMap(partition -> execute(session, List.of("ALTER TABLE " + partition.parentTableName() + " DETACH PARTITION " + partition.name() + " CONCURRENTLY"))))
+                .then();
+    }
+
+    @Override
+    public Mono<Void> dropPartitions(List<Partition> partitions) {
+        Assert.notNull(partitions, "partitions must not be null");
+
+        // first detach partitions concurrently, then delete only partitions that are already detached
+        return detachPartitions(partitions)
+                .thenMany(Flux.fromStream(partitions.stream().map(Partition::parentTableName).distinct()))
+                .concatMap(parentTableName -> withSession(session -> findDetachedPartitionNames(session, parentTableName)
+                        .collectList()
+                        .flatMap(names -> execute(session, names.stream().map(name -> "DROP TABLE " + name).toList()))))
+                .then();
+    }
+
+    @Override
+    public Mono<Void> createPartitions(List<Partition> partitions) {
+        Assert.notNull(partitions, "partitions must not be null");
+
+        return withSession(session -> execute(session, partitions.stream()
+                .map(it -> "CREATE TABLE " + it.name() + " PARTITION OF " + it.parentTableName() + " " + JdbcPartitionRepository.bound(it))
+                .toList()))
+                .then();
+    }
+
+    private Flux<String> findDetachedPartitionNames(DdlSession session, String parentTableName) {
+        String sql = """
+                SELECT
+                    c.relname AS name
+                FROM
+                    pg_class c
+                WHERE
+                    c.relkind = 'r'
+                  AND c.relispartition IS false
+                  AND c.relname LIKE $1 || '%'
+                  AND coalesce(obj_description(c.oid, 'pg_class'), '') NOT LIKE 'jpartitioner:%'
+                """;
+
+        LOGGER.debug("Executing SQL: {}", sql);
+
+        return Flux.from(session.connection.createStatement(sql).bind(0, parentTableName).execute())
+                .flatMap(result -> result.map((row, metadata) -> row.get("name", String.class)));
+    }
+
+    /**
+     * Applies session settings, remembering values configured by the pool, so that {@link #end(DdlSession)} can
+     * restore them.
+     */
+    private Mono<DdlSession> begin(DdlSession session) {
+        if (lockTimeout.isZero()) {
+            return Mono.just(session);
+        }
+        return Flux.from(session.connection.createStatement("SHOW lock_timeout").execute())
+                .flatMap(result -> result.map((row, metadata) -> row.get(0, String.class)))
+                .next()
+                .doOnNext(value -> session.originalLockTimeout = value)
+                .thenMany(Flux.from(session.connection.createStatement("SET lock_timeout = " + lockTimeout.toMillis()).execute()))
+                .flatMap(Result::getRowsUpdated)
+                .then(Mono.just(session));
+    }
+
+    private Mono<Void> end(DdlSession session) {
+        if (session.originalLockTimeout == null) {
+            return Mono.empty();
+        }
+        return Flux.from(session.connection.createStatement("SET lock_timeout = '" + session.originalLockTimeout + "'").execute())
+                .flatMap(Result::getRowsUpdated)
+                .then();
+    }
+
+    /**
+     * Sends statements to the database in a single round-trip.
+     */
+    private Mono<Void> execute(DdlSession session, List<String> sqls) {
+        if (sqls.isEmpty()) {
+            return Mono.empty();
+        }
+        return Mono.defer(() -> {
+            sqls.forEach(sql -> LOGGER.info("Executing SQL: {}", sql));
+            long start = System.nanoTime();
+            Batch batch = session.connection.createBatch();
+            sqls.forEach(batch::add);
+            return Flux.from(batch.execute())
+                    .flatMap(Result::getRowsUpdated)
+                    .then(Mono.fromRunnable(() -> session.executions.add(new DdlExecution(sqls, 1, Duration.ZERO, Duration.ofNanos(System.nanoTime() - start)))));
+        });
+    }
+
+    /**
+     * Runs an action on the connection of the current session, or on a new connection when there is no session.
+     */
+    private <T> Flux<T> withSession(Function<DdlSession, Publisher<T>> action) {
+        return Flux.deferContextual(context -> context.<DdlSession>getOrEmpty(DdlSession.class)
+                .map(session -> Flux.from(action.apply(session)))
+                .orElseGet(() -> Flux.usingWhen(connectionFactory.create(), connection -> action.apply(new DdlSession(connection)), Connection::close)));
+    }
+
+    private static final class DdlSession {
+        private final Connection connection;
+        // statements of a session are executed sequentially
+        private final List<DdlExecution> executions = new ArrayList<>();
+        // lock_timeout before the session changed it, null if it was not changed
+        private String originalLockTimeout;
+
+        private DdlSession(Connection connection) {
+            this.connection = connection;
+        }
+    }
+}
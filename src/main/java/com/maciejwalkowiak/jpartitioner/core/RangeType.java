@@ -1,11 +1,71 @@
 package com.maciejwalkowiak.jpartitioner.core;
 
+import java.time.DayOfWeek;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.IsoFields;
+
 /**
- * Defines if partitions should be created per day or per month.
+ * Defines the time range covered by a single partition.
  *
  * @author Maciej Walkowiak
  */
 public enum RangeType {
+    /**
+     * Partition per hour, for example events_2024021013.
+     */
+    HOURLY,
+
+    /**
+     * Partition per day, for example events_20240210.
+     */
     DAILY,
-    MONTHLY;
+
+    /**
+     * Partition per ISO week, starting on Monday, for example events_2024w06.
+     */
+    WEEKLY,
+
+    /**
+     * Partition per month, for example events_202402.
+     */
+    MONTHLY,
+
+    /**
+     * Partition per quarter, for example events_2024q1.
+     */
+    QUARTERLY;
+
+    /**
+     * Returns the beginning of a range that contains given point in time.
+     *
+     * @param dateTime - point in time
+     * @return beginning of the range
+     */
+    LocalDateTime truncate(LocalDateTime dateTime) {
+        return switch (this) {
+            case HOURLY -> dateTime.truncatedTo(ChronoUnit.HOURS);
+            case DAILY -> dateTime.truncatedTo(ChronoUnit.DAYS);
+            case WEEKLY -> dateTime.truncatedTo(ChronoUnit.DAYS).with(DayOfWeek.MONDAY);
+            case MONTHLY -> dateTime.truncatedTo(ChronoUnit.DAYS).withDayOfMonth(1);
+            case QUARTERLY -> dateTime.truncatedTo(ChronoUnit.DAYS).with(IsoFields.DAY_OF_QUARTER, 1);
+        };
+    }
+
+    /**
+     * Moves given point in time by a number of ranges.
+     *
+     * @param dateTime - point in time
+     * @param ranges - number of ranges, can be negative
+     * @return moved point in time
+     */
+    LocalDateTime plus(LocalDateTime dateTime, long ranges) {
+        return switch (this) {
+            case HOURLY -> dateTime.plusHours(ranges);
+            case DAILY -> dateTime.plusDays(ranges);
+            case WEEKLY -> dateTime.plusWeeks(ranges);
+            case MONTHLY -> dateTime.plusMonths(ranges);
+            case QUARTERLY -> dateTime.plusMonths(ranges * 3);
+        };
+    }
 }
@@ -0,0 +1,56 @@
+package com.maciejwalkowiak.jpartitioner.core;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * Non-blocking data access layer for partitions, a reactive counterpart of {@link PartitionRepository}.
+ *
+ * @author Maciej Walkowiak
+ */
+public interface ReactivePartitionRepository {
+    /**
+     * Returns existing partitions for a given parent table.
+     *
+     * @param tableName - parent table name
+     * @return partitions sorted by name
+     */
+    Flux<Partition> findPartitions(String tableName);
+
+    /**
+     * Detaches concurrently partitions from the parent table.
+     *
+     * @param partitions - list of partitions to detach
+     * @return completion signal
+     */
+    Mono<Void> detachPartitions(List<Partition> partitions);
+
+    /**
+     * Detaches concurrently and drops already detached partitions permanently from the database.
+     *
+     * @param partitions - list of partitions to drop
+     * @return completion signal
+     */
+    Mono<Void> dropPartitions(List<Partition> partitions);
+
+    /**
+     * Creates partitions and attaches them to the parent table.
+     *
+     * @param partitions - list of partitions to add
+     * @return completion signal
+     */
+    Mono<Void> createPartitions(List<Partition> partitions);
+
+    /**
+     * Executes operations of the repository subscribed within given publisher in a single session, so that they
+     * share one connection. Default implementation does not track executed statements.
+     *
+     * @param operations - repository operations
+     * @return DDL statements executed in the session
+     */
+    default Mono<List<DdlExecution>> inSession(Mono<Void> operations) {
+        return operations.thenReturn(List.of());
+    }
+}
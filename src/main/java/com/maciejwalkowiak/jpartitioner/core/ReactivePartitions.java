@@ -0,0 +1,102 @@
+package com.maciejwalkowiak.jpartitioner.core;
+
+import org.springframework.util.Assert;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Manages creating and dropping partitions according to {@link PartitionConfig} with a {@link ReactivePartitionRepository},
+ * a non-blocking counterpart of {@link Partitions}. Supports partitions created with
+ * {@link PartitionCreationMode#PARTITION_OF} and {@link RetentionPolicy#DETACH} or {@link RetentionPolicy#DROP} retention
+ * policy, without a default partition, index templates, tablespaces, retention budget or auto analyze.
+ *
+ * @author Maciej Walkowiak
+ */
+public class ReactivePartitions {
+    private final ReactivePartitionRepository partitionRepository;
+
+    public ReactivePartitions(ReactivePartitionRepository partitionRepository) {
+        Assert.notNull(partitionRepository, "partitionRepository must not be null");
+        this.partitionRepository = partitionRepository;
+    }
+
+    /**
+     * Refreshes partitions in the database according to a config for a current date.
+     *
+     * @param config - partitions config
+     * @return refresh result
+     */
+    public Mono<RefreshResult> refresh(PartitionConfig config) {
+        return Mono.defer(() -> refresh(LocalDateTime.now(), config));
+    }
+
+    /**
+     * Refreshes partitions in the database according to a config for a given date.
+     *
+     * @param date - date as a reference to partition config
+     * @param config - partitions config
+     * @return refresh result
+     */
+    public Mono<RefreshResult> refresh(LocalDate date, PartitionConfig config) {
+        Assert.notNull(date, "date must not be null");
+
+        return refresh(date.atStartOfDay(), config);
+    }
+
+    /**
+     * Refreshes partitions in the database according to a config for a given point in time. Partitions are read and
+     * changed in a single repository session.
+     *
+     * @param date - point in time as a reference to partition config
+     * @param config - partition config
+     * @return refresh result
+     */
+    public Mono<RefreshResult> refresh(LocalDateTime date, PartitionConfig config) {
+        Assert.notNull(date, "date must not be null");
+        Assert.notNull(config, "config must not be null");
+        Assert.isTrue(isSupported(config), "Reactive refresh supports only creating partitions with PARTITION OF and DETACH or DROP retention policy");
+
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            List<Partition> expectedPartitions = Partitions.expectedPartitions(config, date);
+
+            AtomicReference<Partitions.PartitionChangeset> changeset = new AtomicReference<>();
+            Mono<Void> operations = partitionRepository.findPartitions(config.tableName())
+                    .collectList()
+                    .map(existingPartitions -> {
+                        existingPartitions.forEach(it -> it.validate(config));
+                        return Partitions.diff(existingPartitions, expectedPartitions);
+                    })
+                    .doOnNext(changeset::set)
+                    .flatMap(it -> apply(config, it));
+
+            return partitionRepository.inSession(operations)
+                    .map(statements -> new RefreshResult(config.tableName(), changeset.get().remove(), changeset.get().add(), statements, Duration.ofNanos(System.nanoTime() - start)));
+        });
+    }
+
+    private Mono<Void> apply(PartitionConfig config, Partitions.PartitionChangeset changeset) {
+        Mono<Void> remove = switch (config.retentionPolicy()) {
+            case DETACH -> partitionRepository.detachPartitions(changeset.remove());
+            case DROP -> partitionRepository.dropPartitions(changeset.remove());
+            case ARCHIVE -> Mono.error(new IllegalStateException("ARCHIVE retention policy is not supported"));
+        };
+        return remove.then(partitionRepository.createPartitions(changeset.add()));
+    }
+
+    private static boolean isSupported(PartitionConfig config) {
+        return config.retentionPolicy() != RetentionPolicy.ARCHIVE
+                && config.creationMode() == PartitionCreationMode.PARTITION_OF
+                && !config.hasDefaultPartition()
+                && config.indexTemplates().isEmpty()
+                && config.tablespace() == null
+                && !config.hasTablespaceTiers()
+                && !config.hasRetentionBudget()
+                && !config.hasAutoAnalyze();
+    }
+}
@@ -0,0 +1,11 @@
+package com.maciejwalkowiak.jpartitioner.core;
+
+/**
+ * Failed refresh of a single parent table.
+ *
+ * @author Maciej Walkowiak
+ * @param tableName - parent table name
+ * @param exception - the reason of the failure
+ */
+public record RefreshFailure(String tableName, Exception exception) {
+}
@@ -0,0 +1,43 @@
+package com.maciejwalkowiak.jpartitioner.core;
+
+import java.util.List;
+
+/**
+ * Changes that {@link Partitions#refresh(java.time.LocalDateTime, PartitionConfig)} would apply, with estimated cost
+ * of each change. Returned by {@link Partitions#plan(java.time.LocalDateTime, PartitionConfig)} without executing any DDL.
+ *
+ * @author Maciej Walkowiak
+ * @param tableName - parent table name
+ * @param retentionPolicy - what happens with removed partitions
+ * @param remove - partitions to be removed according to the retention policy
+ * @param add - partitions to be created
+ */
+public record RefreshPlan(String tableName, RetentionPolicy retentionPolicy, List<PartitionEstimate> remove, List<PartitionEstimate> add) {
+
+    /**
+     * Returns if refresh would not change anything.
+     *
+     * @return true if there is nothing to remove and nothing to add
+     */
+    public boolean isEmpty() {
+        return remove.isEmpty() && add.isEmpty();
+    }
+
+    /**
+     * Returns total size of partitions to be removed.
+     *
+     * @return size in bytes
+     */
+    public long bytesToRemove() {
+        return remove.stream().mapToLong(PartitionEstimate::totalBytes).sum();
+    }
+
+    /**
+     * Returns if any of the changes needs an ACCESS EXCLUSIVE lock on the parent table while other sessions hold locks on it.
+     *
+     * @return true if refresh would queue queries on the parent table
+     */
+    public boolean locksBusyParent() {
+        return remove.stream().anyMatch(PartitionEstimate::locksBusyParent) || add.stream().anyMatch(PartitionEstimate::locksBusyParent);
+    }
+}
@@ -0,0 +1,22 @@
+package com.maciejwalkowiak.jpartitioner.core;
+
+import java.util.List;
+
+/**
+ * Report of refreshing partitions of multiple parent tables with {@link Partitions#refreshAll(java.util.Collection)}.
+ *
+ * @author Maciej Walkowiak
+ * @param results - results of successfully refreshed tables
+ * @param failures - tables that failed to refresh
+ */
+public record RefreshReport(List<RefreshResult> results, List<RefreshFailure> failures) {
+
+    /**
+     * Returns if any of the tables failed to refresh.
+     *
+     * @return true if at least one table failed to refresh
+     */
+    public boolean hasFailures() {
+        return !failures.isEmpty();
+    }
+}
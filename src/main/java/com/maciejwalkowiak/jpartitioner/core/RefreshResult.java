@@ -0,0 +1,17 @@
+package com.maciejwalkowiak.jpartitioner.core;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Outcome of refreshing partitions of a single parent table.
+ *
+ * @author Maciej Walkowiak
+ * @param tableName - parent table name
+ * @param removed - partitions detached or dropped according to the retention policy
+ * @param added - partitions created
+ * @param statements - DDL statements executed in the refresh session
+ * @param duration - how long the refresh took
+ */
+public record RefreshResult(String tableName, List<Partition> removed, List<Partition> added, List<DdlExecution> statements, Duration duration) {
+}
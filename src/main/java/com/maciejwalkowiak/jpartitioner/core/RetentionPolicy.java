@@ -14,5 +14,10 @@ public enum RetentionPolicy {
     /**
      * Detaches and drops partition - this is a destructive operation.
      */
-    DROP
+    DROP,
+
+    /**
+     * Detaches partition, copies its rows to compressed files in {@link PartitionConfig#archiveDirectory()} and drops it.
+     */
+    ARCHIVE
 }
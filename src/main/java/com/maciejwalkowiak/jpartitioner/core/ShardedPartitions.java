@@ -0,0 +1,224 @@
+package com.maciejwalkowiak.jpartitioner.core;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.util.Assert;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+/**
+ * Refreshes the same set of partition configs across multiple databases with the same schema - shards or tenant
+ * databases. All shards are refreshed at the same time, each on its own virtual thread and with its own
+ * {@link Partitions}, which limits how many tables of the shard are refreshed concurrently.
+ *
+ * Each shard must have its own {@link DataSource} with its own connection pool, so that a slow or unavailable shard
+ * only holds connections of its own pool and does not delay refreshing the others. A shard that does not complete
+ * the refresh within {@link #shardTimeout(Duration)} is reported as failed.
+ *
+ * Data sources created by {@link #shards(Collection, Function)} are owned by this manager and closed on
+ * {@link #close()}.
+ *
+ * @author Maciej Walkowiak
+ */
+public class ShardedPartitions implements AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ShardedPartitions.class);
+
+    // shard name -> partitions manager of the shard
+    private final Map<String, Partitions> shards = new LinkedHashMap<>();
+    // data sources created by a factory, closed together with the manager
+    private final List<DataSource> ownedDataSources = new ArrayList<>();
+    private final int maxConcurrencyPerShard;
+    private Duration shardTimeout = Duration.ofMinutes(10);
+
+    /**
+     * Creates sharded partitions manager.
+     *
+     * @param maxConcurrencyPerShard - how many tables of a single shard can be refreshed at the same time. Should not exceed the connection pool size of a shard.
+     *                               Applies to shards registered with a data source - shards registered with {@link #shard(String, Partitions)} use the concurrency of their partitions manager.
+     */
+    public ShardedPartitions(int maxConcurrencyPerShard) {
+        Assert.isTrue(maxConcurrencyPerShard > 0, "maxConcurrencyPerShard must be greater than 0");
+        this.maxConcurrencyPerShard = maxConcurrencyPerShard;
+    }
+
+    /**
+     * Configures how long refreshing a single shard can take. A shard that exceeds the timeout is reported as failed
+     * and the thread refreshing it is interrupted, while other shards are still awaited.
+     *
+     * @param shardTimeout - maximum duration of refreshing a shard, measured from the start of {@code refreshAll}
+     * @return sharded partitions manager
+     */
+    public ShardedPartitions shardTimeout(Duration shardTimeout) {
+        Assert.notNull(shardTimeout, "shardTimeout must not be null");
+        Assert.isTrue(shardTimeout.isPositive(), "shardTimeout must be positive");
+        this.shardTimeout = shardTimeout;
+        return this;
+    }
+
+    /**
+     * Registers a shard with a data source.
+     *
+     * @param name - shard name
+     * @param dataSource - data source of the shard, not shared with other shards
+     * @return sharded partitions manager
+     */
+    public ShardedPartitions shard(String name, DataSource dataSource) {
+        Assert.notNull(dataSource, "dataSource must not be null");
+
+        return shard(name, new Partitions(new JdbcPartitionRepository(new JdbcTemplate(dataSource)), maxConcurrencyPerShard));
+    }
+
+    /**
+     * Registers a shard with a custom partitions manager, for example with a configured repository or metrics.
+     * {@code maxConcurrencyPerShard} does not apply to such shard - the partitions manager should be created with
+     * {@link Partitions#Partitions(PartitionRepository, int)} to limit how many tables are refreshed concurrently.
+     *
+     * @param name - shard name
+     * @param partitions - partitions manager of the shard
+     * @return sharded partitions manager
+     */
+    public ShardedPartitions shard(String name, Partitions partitions) {
+        Assert.hasText(name, "name must not be empty");
+        Assert.notNull(partitions, "partitions must not be null");
+        Assert.isTrue(!shards.containsKey(name), "Shard " + name + " is already registered");
+
+        shards.put(name, partitions);
+        return this;
+    }
+
+    /**
+     * Registers shards with data sources created by a factory. Created data sources are closed on {@link #close()}.
+     *
+     * @param names - shard names
+     * @param dataSourceFactory - creates a data source for a shard name
+     * @return sharded partitions manager
+     */
+    public ShardedPartitions shards(Collection<String> names, Function<String, DataSource> dataSourceFactory) {
+        Assert.notNull(names, "names must not be null");
+        Assert.notNull(dataSourceFactory, "dataSourceFactory must not be null");
+        // validated before any data source is created, so that no data source is left unregistered and not closed
+        Assert.isTrue(new HashSet<>(names).size() == names.size(), "names must not contain duplicates");
+        for (String name : names) {
+            Assert.hasText(name, "name must not be empty");
+            Assert.isTrue(!shards.containsKey(name), "Shard " + name + " is already registered");
+        }
+
+        for (String name : names) {
+            DataSource dataSource = dataSourceFactory.apply(name);
+            shard(name, dataSource);
+            ownedDataSources.add(dataSource);
+        }
+        return this;
+    }
+
+    /**
+     * Refreshes partitions of multiple tables on all shards for a current date.
+     *
+     * @param configs - partition configs
+     * @return report with results and failures for each shard
+     * @see #refreshAll(LocalDateTime, Collection)
+     */
+    public ShardedRefreshReport refreshAll(Collection<PartitionConfig> configs) {
+        return refreshAll(LocalDateTime.now(), configs);
+    }
+
+    /**
+     * Refreshes partitions of multiple tables on all shards for a given date.
+     *
+     * @param date - point in time as a reference to partition configs
+     * @param configs - partition configs
+     * @return report with results and failures for each shard
+     * @see #refreshAll(LocalDateTime, Collection)
+     */
+    public ShardedRefreshReport refreshAll(LocalDate date, Collection<PartitionConfig> configs) {
+        Assert.notNull(date, "date must not be null");
+
+        return refreshAll(date.atStartOfDay(), configs);
+    }
+
+    /**
+     * Refreshes partitions of multiple tables on all shards for a given point in time. A failure or a timeout on one
+     * shard does not stop refreshing the others - it is recorded in the report of the shard.
+     *
+     * @param date - point in time as a reference to partition configs
+     * @param configs - partition configs
+     * @return report with results and failures for each shard
+     */
+    public ShardedRefreshReport refreshAll(LocalDateTime date, Collection<PartitionConfig> configs) {
+        Assert.notNull(date, "date must not be null");
+        Assert.notNull(configs, "configs must not be null");
+
+        Map<String, RefreshReport> reports = new LinkedHashMap<>();
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        try {
+            long deadline = System.nanoTime() + shardTimeout.toNanos();
+            Map<String, Future<RefreshReport>> futures = new LinkedHashMap<>();
+            shards.forEach((name, partitions) -> futures.put(name, executor.submit(() -> partitions.refreshAll(date, configs))));
+
+            futures.forEach((name, future) -> {
+                try {
+                    reports.put(name, future.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS));
+                } catch (ExecutionException e) {
+                    LOGGER.error("Failed to refresh partitions on shard: {}", name, e.getCause());
+                    reports.put(name, failedReport(configs, e.getCause() instanceof Exception ex ? ex : e));
+                } catch (TimeoutException e) {
+                    LOGGER.error("Refreshing partitions on shard: {} timed out after {}", name, shardTimeout);
+                    future.cancel(true);
+                    reports.put(name, failedReport(configs, new TimeoutException("Refreshing partitions on shard " + name + " timed out after " + shardTimeout)));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    future.cancel(true);
+                    reports.put(name, failedReport(configs, e));
+                }
+            });
+        } finally {
+            // does not wait for timed out shards - their threads are interrupted and finish once the database responds
+            executor.shutdownNow();
+        }
+        return new ShardedRefreshReport(Collections.unmodifiableMap(reports));
+    }
+
+    /**
+     * Closes data sources created by {@link #shards(Collection, Function)}. Data sources passed to
+     * {@link #shard(String, DataSource)} are managed by the caller and are not closed.
+     */
+    @Override
+    public void close() {
+        for (DataSource dataSource : ownedDataSources) {
+            if (dataSource instanceof AutoCloseable closeable) {
+                try {
+                    closeable.close();
+                } catch (Exception e) {
+                    LOGGER.warn("Failed to close data source", e);
+                }
+            }
+        }
+        ownedDataSources.clear();
+    }
+
+    private static RefreshReport failedReport(Collection<PartitionConfig> configs, Exception exception) {
+        List<RefreshFailure> failures = new ArrayList<>();
+        for (PartitionConfig config : configs) {
+            failures.add(new RefreshFailure(config.tableName(), exception));
+        }
+        return new RefreshReport(List.of(), List.copyOf(failures));
+    }
+}
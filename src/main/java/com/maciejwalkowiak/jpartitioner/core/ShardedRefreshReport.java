@@ -0,0 +1,34 @@
+package com.maciejwalkowiak.jpartitioner.core;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Report of refreshing partitions across multiple shards with {@link ShardedPartitions#refreshAll(java.util.Collection)}.
+ *
+ * @author Maciej Walkowiak
+ * @param shards - shard name -> report of refreshing tables of the shard, in the order of registered shards
+ */
+public record ShardedRefreshReport(Map<String, RefreshReport> shards) {
+
+    /**
+     * Returns if any of the tables on any of the shards failed to refresh.
+     *
+     * @return true if at least one table failed to refresh
+     */
+    public boolean hasFailures() {
+        return shards.values().stream().anyMatch(RefreshReport::hasFailures);
+    }
+
+    /**
+     * Returns names of shards where at least one table failed to refresh.
+     *
+     * @return names of failed shards
+     */
+    public List<String> failedShards() {
+        return shards.entrySet().stream()
+                .filter(it -> it.getValue().hasFailures())
+                .map(Map.Entry::getKey)
+                .toList();
+    }
+}
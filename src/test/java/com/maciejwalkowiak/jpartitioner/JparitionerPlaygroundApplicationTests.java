@@ -1,28 +1,47 @@
 package com.maciejwalkowiak.jpartitioner;
 
 import com.maciejwalkowiak.jpartitioner.core.*;
+import io.r2dbc.spi.ConnectionFactories;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.EnumSource;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.simple.JdbcClient;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.transaction.support.TransactionTemplate;
-
+import org.testcontainers.containers.PostgreSQLContainer;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.List;
 import java.util.Optional;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.fail;
 
 @Import(TestcontainersConfiguration.class)
-@SpringBootTest
+// r2dbc-postgresql on the test classpath would otherwise replace the DataSource with a ConnectionFactory
+@SpringBootTest(properties = "spring.autoconfigure.exclude=org.springframework.boot.autoconfigure.r2dbc.R2dbcAutoConfiguration")
 @Transactional(propagation = Propagation.NEVER)
 class JparitionerPlaygroundApplicationTests {
 
@@ -35,6 +54,10 @@ class JparitionerPlaygroundApplicationTests {
     private Partitions partitions;
     @Autowired
     private TransactionTemplate transactionTemplate;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private PostgreSQLContainer<?> postgresContainer;
 
     @BeforeEach
     void setUp() {
@@ -55,7 +78,7 @@ class JparitionerPlaygroundApplicationTests {
     }
 
     @ParameterizedTest
-    @EnumSource(RetentionPolicy.class)
+    @EnumSource(value = RetentionPolicy.class, names = {"DETACH", "DROP"})
     void detachesOrDeletesDailyPartitions(RetentionPolicy retentionPolicy) {
         createDailyPartition(pointInTime());
         createDailyPartition(pointInTime().minusDays(1));
@@ -90,7 +113,7 @@ class JparitionerPlaygroundApplicationTests {
     }
 
     @ParameterizedTest
-    @EnumSource(RetentionPolicy.class)
+    @EnumSource(value = RetentionPolicy.class, names = {"DETACH", "DROP"})
     void detachesOrDeletesMonthlyPartitions(RetentionPolicy retentionPolicy) {
         createMonthlyPartition(pointInTime());
         createMonthlyPartition(pointInTime().minusMonths(1));
@@ -130,6 +153,369 @@ class JparitionerPlaygroundApplicationTests {
         }
     }
 
+    @Test
+    void keepsCachedCatalogInSyncWithExecutedDdl() {
+        createDailyPartition(pointInTime());
+        createDailyPartition(pointInTime().minusDays(1));
+
+        var repository = new JdbcPartitionRepository(jdbcTemplate).catalogCacheTtl(Duration.ofMinutes(5));
+        assertThat(repository.findPartitions("events")).containsExactly(
+                Partition.of("events_20240209"),
+                Partition.of("events_20240210"));
+
+        repository.createPartitions(List.of(Partition.of("events_20240211")));
+        repository.dropPartitions(List.of(Partition.of("events_20240209")));
+
+        assertThat(repository.findPartitions("events")).containsExactly(
+                Partition.of("events_20240210"),
+                Partition.of("events_20240211"));
+        assertThat(findTableByName("events_20240209")).isNotPresent();
+
+        // DDL executed outside of the repository is visible only after invalidating the catalog
+        createDailyPartition(pointInTime().plusDays(2));
+        assertThat(repository.findPartitions("events")).hasSize(2);
+        repository.invalidateCatalog();
+        assertThat(repository.findPartitions("events")).hasSize(3);
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = RetentionPolicy.class, names = {"DETACH", "DROP"})
+    void refreshesPartitionsWithBatchedDdl(RetentionPolicy retentionPolicy) {
+        createDailyPartition(pointInTime().minusDays(10));
+        createDailyPartition(pointInTime().minusDays(11));
+
+        var partitions = new Partitions(new JdbcPartitionRepository(jdbcTemplate).ddlBatchSize(4));
+        partitions.refresh(pointInTime(), PartitionConfig.forTable("events")
+                .retention(3, retentionPolicy)
+                .buffer(7));
+
+        assertThat(jdbcPartitionRepository.findPartitions("events")).hasSize(10);
+        assertThat(findTableByName("events_20240131").isPresent()).isEqualTo(retentionPolicy == RetentionPolicy.DETACH);
+    }
+
+    @Test
+    void createsPartitionsByAttachingStandaloneTables() {
+        createDailyPartition(pointInTime().minusDays(1));
+
+        partitions.refresh(pointInTime(), PartitionConfig.forTable("events")
+                .creationMode(PartitionCreationMode.ATTACH)
+                .retention(1, RetentionPolicy.DROP)
+                .buffer(2));
+
+        assertThat(jdbcPartitionRepository.findPartitions("events")).containsExactly(
+                Partition.of("events_20240209"),
+                Partition.of("events_20240210"),
+                Partition.of("events_20240211"));
+
+        assertThat(jdbcClient.sql("SELECT count(*) FROM pg_constraint WHERE conname LIKE 'events_%_bounds'")
+                .query(Long.class)
+                .single()).isZero();
+
+        transactionTemplate.executeWithoutResult(status -> jdbcClient.sql("insert into events(name, created_at) values ('xxx', :timestamp)")
+                .param("timestamp", LocalDateTime.of(2024, 2, 11, 23, 59, 59))
+                .update());
+
+        assertThat(jdbcClient.sql("select name from events_20240211")
+                .query(String.class)
+                .single()).isEqualTo("xxx");
+    }
+
+    @Test
+    void retriesDdlWhenLockIsNotAvailable() throws Exception {
+        var lockAcquired = new CountDownLatch(1);
+        var lockHolder = Thread.ofVirtual().start(() -> transactionTemplate.executeWithoutResult(status -> {
+            jdbcClient.sql("LOCK TABLE events IN ACCESS EXCLUSIVE MODE").update();
+            lockAcquired.countDown();
+            jdbcClient.sql("SELECT pg_sleep(0.5)").query().listOfRows();
+        }));
+        lockAcquired.await();
+
+        var partitions = new Partitions(new JdbcPartitionRepository(jdbcTemplate)
+                .lockTimeout(Duration.ofMillis(100))
+                .retry(20, Duration.ofMillis(50), Duration.ofMillis(200)));
+        var result = partitions.refresh(pointInTime(), PartitionConfig.forTable("events")
+                .retention(0, RetentionPolicy.DETACH)
+                .buffer(1));
+        lockHolder.join();
+
+        assertThat(jdbcPartitionRepository.findPartitions("events")).containsExactly(Partition.of("events_20240210"));
+        assertThat(result.statements()).singleElement().satisfies(execution -> {
+            assertThat(execution.attempts()).isGreaterThan(1);
+            assertThat(execution.waitTime()).isPositive();
+        });
+    }
+
+    @Test
+    void archivesPartitionsBeforeDroppingThem(@TempDir Path archiveDirectory) throws Exception {
+        createDailyPartition(pointInTime().minusDays(1));
+        executeSql("INSERT INTO events(name, created_at) SELECT 'row' || i, '2024-02-09T10:00:00'::timestamp FROM generate_series(1, 1000) i");
+
+        partitions.refresh(pointInTime(), PartitionConfig.forTable("events")
+                .archive(0, archiveDirectory)
+                .buffer(1));
+
+        assertThat(findTableByName("events_20240209")).isNotPresent();
+
+        var manifest = new Properties();
+        try (var in = Files.newInputStream(archiveDirectory.resolve("events_20240209/manifest.properties"))) {
+            manifest.load(in);
+        }
+        assertThat(manifest.getProperty("rows")).isEqualTo("1000");
+        try (var in = new GZIPInputStream(Files.newInputStream(archiveDirectory.resolve("events_20240209/events_20240209.00000.copy.gz")))) {
+            // binary COPY format signature
+            assertThat(in.readNBytes(11)).isEqualTo("PGCOPY\n\377\r\n\0".getBytes(StandardCharsets.ISO_8859_1));
+        }
+    }
+
+    @Test
+    void restoresArchivedPartitions(@TempDir Path archiveDirectory) {
+        createDailyPartition(pointInTime().minusDays(1));
+        executeSql("INSERT INTO events(name, created_at) SELECT 'row' || i, '2024-02-09T10:00:00'::timestamp FROM generate_series(1, 1000) i");
+        var config = PartitionConfig.forTable("events")
+                .archive(0, archiveDirectory)
+                .buffer(1);
+        partitions.refresh(pointInTime(), config);
+
+        var restored = partitions.restore(config, LocalDateTime.of(2024, 2, 9, 0, 0), LocalDateTime.of(2024, 2, 10, 0, 0));
+
+        assertThat(restored).containsExactly(Partition.of("events_20240209"));
+        assertThat(jdbcPartitionRepository.findPartitions("events")).containsExactly(
+                Partition.of("events_20240209"),
+                Partition.of("events_20240210"));
+        assertThat(jdbcClient.sql("SELECT count(*) FROM events WHERE created_at < '2024-02-10'")
+                .query(Long.class)
+                .single()).isEqualTo(1000);
+        assertThat(jdbcClient.sql("SELECT count(*) FROM pg_indexes WHERE tablename = 'events_20240209'")
+                .query(Long.class)
+                .single()).isEqualTo(1);
+    }
+
+    @Test
+    void plansRefreshWithCostEstimates() {
+        createDailyPartition(pointInTime().minusDays(1));
+        executeSql("INSERT INTO events(name, created_at) SELECT 'row' || i, '2024-02-09T10:00:00'::timestamp FROM generate_series(1, 1000) i");
+        executeSql("ANALYZE events_20240209");
+
+        var plan = partitions.plan(pointInTime(), PartitionConfig.forTable("events")
+                .retention(0, RetentionPolicy.DROP)
+                .buffer(1));
+
+        assertThat(plan.remove()).singleElement().satisfies(estimate -> {
+            assertThat(estimate.partition()).isEqualTo(Partition.of("events_20240209"));
+            assertThat(estimate.totalBytes()).isPositive();
+            assertThat(estimate.estimatedRows()).isEqualTo(1000);
+            assertThat(estimate.indexes()).isEqualTo(1);
+        });
+        assertThat(plan.add()).singleElement().satisfies(estimate -> {
+            assertThat(estimate.partition()).isEqualTo(Partition.of("events_20240210"));
+            assertThat(estimate.totalBytes()).isZero();
+        });
+        assertThat(findTableByName("events_20240209")).isPresent();
+        assertThat(findTableByName("events_20240210")).isNotPresent();
+    }
+
+    @Test
+    void buildsIndexTemplatesBeforeAttachingPartitions() {
+        partitions.refresh(pointInTime(), PartitionConfig.forTable("events")
+                .retention(0, RetentionPolicy.DETACH)
+                .buffer(2)
+                .index("created_at_brin", "USING brin (created_at)"));
+
+        assertThat(jdbcPartitionRepository.findPartitions("events")).containsExactly(
+                Partition.of("events_20240210"),
+                Partition.of("events_20240211"));
+        assertThat(jdbcClient.sql("SELECT indexname FROM pg_indexes WHERE indexname LIKE 'events_%_created_at_brin' ORDER BY indexname")
+                .query(String.class)
+                .list()).containsExactly("events_20240210_created_at_brin", "events_20240211_created_at_brin");
+        assertThat(jdbcClient.sql("SELECT indexname FROM pg_indexes WHERE tablename = 'events_20240210' ORDER BY indexname")
+                .query(String.class)
+                .list()).containsExactly("events_20240210_created_at_brin", "events_20240210_events_pkey");
+    }
+
+    @Test
+    void doesNotDuplicateParentIndexesReplacedByIndexTemplates() {
+        partitions.refresh(pointInTime(), PartitionConfig.forTable("events")
+                .retention(0, RetentionPolicy.DETACH)
+                .uniqueIndex("pk", "(id, created_at)"));
+
+        assertThat(jdbcClient.sql("SELECT indexname FROM pg_indexes WHERE tablename = 'events_20240210'")
+                .query(String.class)
+                .list()).containsExactly("events_20240210_pk");
+        assertThat(jdbcClient.sql("SELECT conname FROM pg_constraint WHERE conrelid = 'events_20240210'::regclass AND contype = 'p'")
+                .query(String.class)
+                .list()).containsExactly("events_20240210_pk");
+    }
+
+    @Test
+    void ingestsRowsDirectlyToPartitions() {
+        partitions.refresh(pointInTime(), PartitionConfig.forTable("events")
+                .retention(1, RetentionPolicy.DROP)
+                .buffer(1));
+        record Event(String name, LocalDateTime createdAt) {
+        }
+
+        try (var ingester = new PartitionIngester<Event>(jdbcTemplate, jdbcPartitionRepository, "events", List.of("name", "created_at"),
+                Event::createdAt, (event, columns) -> columns.add(event.name()).add(event.createdAt()))
+                .maxRows(2)) {
+            ingester.addAll(Stream.of(
+                    new Event("a", LocalDateTime.of(2024, 2, 9, 10, 0)),
+                    new Event("b\tc", LocalDateTime.of(2024, 2, 10, 10, 0)),
+                    new Event("d", LocalDateTime.of(2024, 2, 9, 11, 0)),
+                    new Event("e", LocalDateTime.of(2024, 2, 10, 11, 0))));
+        }
+
+        assertThat(jdbcClient.sql("SELECT name FROM events_20240209 ORDER BY name")
+                .query(String.class)
+                .list()).containsExactly("a", "d");
+        assertThat(jdbcClient.sql("SELECT name FROM events_20240210 ORDER BY name")
+                .query(String.class)
+                .list()).containsExactly("b\tc", "e");
+    }
+
+    @Test
+    void queriesOverlappingPartitionsConcurrently() {
+        partitions.refresh(pointInTime(), PartitionConfig.forTable("events")
+                .retention(2, RetentionPolicy.DROP)
+                .buffer(1));
+        executeSql("INSERT INTO events(name, created_at) VALUES ('a', '2024-02-08T10:00:00'), ('b', '2024-02-09T10:00:00'), ('c', '2024-02-10T10:00:00')");
+        var partitionQueries = new PartitionQueries(jdbcTemplate, jdbcPartitionRepository).maxConcurrency(2);
+
+        var names = partitionQueries.query("events", LocalDateTime.of(2024, 2, 9, 0, 0), LocalDateTime.of(2024, 2, 11, 0, 0),
+                "SELECT name FROM {partition} WHERE created_at >= ? AND created_at < ?",
+                (rs, rowNum) -> rs.getString("name"), LocalDateTime.of(2024, 2, 9, 0, 0), LocalDateTime.of(2024, 2, 11, 0, 0));
+
+        assertThat(partitionQueries.findPartitions("events", LocalDateTime.of(2024, 2, 9, 0, 0), LocalDateTime.of(2024, 2, 11, 0, 0)))
+                .containsExactly(Partition.of("events_20240209"), Partition.of("events_20240210"));
+        assertThat(names).containsExactly("b", "c");
+    }
+
+    @Test
+    void queriesDefaultPartitionWithinRange() {
+        partitions.refresh(pointInTime(), PartitionConfig.forTable("events")
+                .retention(2, RetentionPolicy.DROP)
+                .buffer(1));
+        executeSql("CREATE TABLE events_default PARTITION OF events DEFAULT");
+        executeSql("INSERT INTO events(name, created_at) VALUES ('b', '2024-02-09T10:00:00'), ('d', '2024-02-12T10:00:00'), ('e', '2024-02-20T10:00:00')");
+
+        var names = new PartitionQueries(jdbcTemplate, jdbcPartitionRepository).query("events", LocalDateTime.of(2024, 2, 9, 0, 0), LocalDateTime.of(2024, 2, 13, 0, 0),
+                "SELECT name FROM {partition}", (rs, rowNum) -> rs.getString("name"));
+
+        assertThat(names).containsExactly("b", "d");
+    }
+
+    @Test
+    void dropsQueuedPartitionsInBackgroundWithinRateLimit() {
+        createDailyPartition(pointInTime().minusDays(2));
+        createDailyPartition(pointInTime().minusDays(1));
+
+        var repository = new JdbcPartitionRepository(jdbcTemplate).deferDrops(true);
+        new Partitions(repository).refresh(pointInTime(), PartitionConfig.forTable("events")
+                .retention(0, RetentionPolicy.DROP)
+                .buffer(1));
+
+        // refresh only detaches and queues partitions
+        assertThat(findTableByName("events_20240208")).isPresent();
+        assertThat(findTableByName("events_20240209")).isPresent();
+        assertThat(repository.findPartitions("events")).containsExactly(Partition.of("events_20240210"));
+
+        var reaper = new PartitionReaper(jdbcTemplate).rateLimit(1, Long.MAX_VALUE, Duration.ZERO);
+        assertThat(reaper.reapNow()).containsExactly("events_20240208");
+        assertThat(findTableByName("events_20240208")).isNotPresent();
+        assertThat(findTableByName("events_20240209")).isPresent();
+
+        assertThat(reaper.reapNow()).containsExactly("events_20240209");
+        assertThat(reaper.reapNow()).isEmpty();
+    }
+
+    @Test
+    void refreshesPartitionsWithReactiveRepository() {
+        createDailyPartition(pointInTime().minusDays(1));
+        var connectionFactory = ConnectionFactories.get("r2dbc:postgresql://%s:%s@%s:%d/%s".formatted(postgresContainer.getUsername(), postgresContainer.getPassword(), postgresContainer.getHost(), postgresContainer.getMappedPort(PostgreSQLContainer.POSTGRESQL_PORT), postgresContainer.getDatabaseName()));
+        var reactivePartitions = new ReactivePartitions(new R2dbcPartitionRepository(connectionFactory));
+
+        var result = reactivePartitions.refresh(pointInTime(), PartitionConfig.forTable("events")
+                .retention(0, RetentionPolicy.DROP)
+                .buffer(2)).block();
+
+        assertThat(result.removed()).containsExactly(Partition.of("events_20240209"));
+        assertThat(result.added()).containsExactly(
+                Partition.of("events_20240210"),
+                Partition.of("events_20240211"));
+        assertThat(result.statements()).hasSize(3);
+        assertThat(findTableByName("events_20240209")).isNotPresent();
+        assertThat(jdbcPartitionRepository.findPartitions("events")).containsExactly(
+                Partition.of("events_20240210"),
+                Partition.of("events_20240211"));
+    }
+
+    @Test
+    void movesRowsFromDefaultPartitionToCreatedPartitions() {
+        executeSql("CREATE TABLE events_default PARTITION OF events DEFAULT");
+        executeSql("INSERT INTO events(name, created_at) SELECT 'row' || i, '2024-02-11T10:00:00'::timestamp FROM generate_series(1, 5) i");
+        executeSql("INSERT INTO events(name, created_at) VALUES ('future', '2024-03-01T10:00:00')");
+
+        partitions.refresh(pointInTime(), PartitionConfig.forTable("events")
+                .retention(0, RetentionPolicy.DETACH)
+                .buffer(2)
+                .defaultPartition(2, Duration.ZERO));
+
+        assertThat(jdbcPartitionRepository.findPartitions("events")).containsExactly(
+                Partition.of("events_20240210"),
+                Partition.of("events_20240211"));
+        assertThat(jdbcClient.sql("SELECT count(*) FROM events_20240211")
+                .query(Long.class)
+                .single()).isEqualTo(5);
+        assertThat(jdbcClient.sql("SELECT name FROM events_default")
+                .query(String.class)
+                .list()).containsExactly("future");
+        assertThat(jdbcClient.sql("SELECT count(*) FROM pg_constraint WHERE conname LIKE 'events_%_excluded'")
+                .query(Long.class)
+                .single()).isZero();
+    }
+
+    @ParameterizedTest
+    @EnumSource(PartitionRefreshScheduler.LockScope.class)
+    void refreshesPartitionsUnderAdvisoryLock(PartitionRefreshScheduler.LockScope lockScope) {
+        var scheduler = new PartitionRefreshScheduler(partitions, jdbcTemplate, List.of(PartitionConfig.forTable("events")
+                .retention(0, RetentionPolicy.DETACH)
+                .buffer(2)))
+                .lockScope(lockScope);
+
+        var report = scheduler.refreshNow();
+
+        assertThat(report.results()).singleElement().satisfies(result -> assertThat(result.added()).hasSize(2));
+        assertThat(jdbcClient.sql("SELECT count(*) FROM pg_locks WHERE locktype = 'advisory'")
+                .query(Long.class)
+                .single()).isZero();
+    }
+
+    @ParameterizedTest
+    @EnumSource(PartitionRefreshScheduler.LockScope.class)
+    void skipsRefreshWhenAnotherInstanceHoldsLock(PartitionRefreshScheduler.LockScope lockScope) throws SQLException {
+        var scheduler = new PartitionRefreshScheduler(partitions, jdbcTemplate, List.of(PartitionConfig.forTable("events")
+                .retention(0, RetentionPolicy.DETACH)
+                .buffer(2)))
+                .lockScope(lockScope);
+        // 0x6a700001 and 0x6a700002 are namespaces of the global lock and of table lock keys
+        var lock = lockScope == PartitionRefreshScheduler.LockScope.GLOBAL
+                ? "pg_advisory_lock(1785724929, 0)"
+                : "pg_advisory_lock(hashtextextended('events', 1785724930))";
+
+        // the lock of another instance is held by a session of a separate connection
+        try (Connection connection = DriverManager.getConnection(postgresContainer.getJdbcUrl(), postgresContainer.getUsername(), postgresContainer.getPassword());
+             Statement statement = connection.createStatement()) {
+            statement.execute("SELECT " + lock);
+
+            var report = scheduler.refreshNow();
+
+            assertThat(report.results()).isEmpty();
+            assertThat(report.failures()).isEmpty();
+            assertThat(jdbcPartitionRepository.findPartitions("events")).isEmpty();
+        }
+
+        assertThat(scheduler.refreshNow().results()).singleElement().satisfies(result -> assertThat(result.added()).hasSize(2));
+    }
+
     private Optional<String> findTableByName(String tableName) {
         return jdbcClient.sql("SELECT tablename FROM pg_tables WHERE schemaname = 'public' AND tablename = :tableName")
                 .param("tableName", tableName)
@@ -138,7 +524,7 @@ class JparitionerPlaygroundApplicationTests {
     }
 
     @ParameterizedTest
-    @EnumSource(RetentionPolicy.class)
+    @EnumSource(value = RetentionPolicy.class, names = {"DETACH", "DROP"})
     void insertsRowsToDailyPartitions(RetentionPolicy retentionPolicy) {
         createDailyPartition(pointInTime());
         createDailyPartition(pointInTime().minusDays(1));
@@ -173,7 +559,7 @@ class JparitionerPlaygroundApplicationTests {
     }
 
     @ParameterizedTest
-    @EnumSource(RetentionPolicy.class)
+    @EnumSource(value = RetentionPolicy.class, names = {"DETACH", "DROP"})
     void insertsRowsToMonthlyPartitions(RetentionPolicy retentionPolicy) {
         createMonthlyPartition(pointInTime());
         createMonthlyPartition(pointInTime().minusMonths(1));
@@ -0,0 +1,127 @@
+package com.maciejwalkowiak.jpartitioner.config;
+
+import com.maciejwalkowiak.jpartitioner.core.JdbcPartitionRepository;
+import com.maciejwalkowiak.jpartitioner.core.PartitionCreationMode;
+import com.maciejwalkowiak.jpartitioner.core.PartitionRefreshScheduler;
+import com.maciejwalkowiak.jpartitioner.core.Partitions;
+import com.maciejwalkowiak.jpartitioner.core.RangeType;
+import com.maciejwalkowiak.jpartitioner.core.RetentionPolicy;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.test.context.assertj.AssertableApplicationContext;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+class JPartitionerAutoConfigurationTest {
+    private final ApplicationContextRunner contextRunner = new ApplicationContextRunner()
+            .withConfiguration(AutoConfigurations.of(JPartitionerAutoConfiguration.class))
+            .withBean(JdbcTemplate.class, () -> mock(JdbcTemplate.class));
+
+    @Test
+    void bindsDefaultValues() {
+        contextRunner.withPropertyValues("jpartitioner.tables[0].name=events").run(context -> {
+            var properties = context.getBean(JPartitionerProperties.class);
+
+            assertThat(properties.tables()).containsExactly(
+                    new JPartitionerProperties.Table("events", RangeType.DAILY, 7, RetentionPolicy.DETACH, null, 1, PartitionCreationMode.PARTITION_OF));
+            assertThat(properties.refresh()).isEqualTo(
+                    new JPartitionerProperties.Refresh(true, Duration.ofHours(1), PartitionRefreshScheduler.LockScope.GLOBAL, false));
+            assertThat(properties.minHeadroom()).isEqualTo(1);
+        });
+    }
+
+    @Test
+    void bindsConfiguredValues() {
+        contextRunner.withPropertyValues(
+                "jpartitioner.tables[0].name=events",
+                "jpartitioner.tables[0].range-type=monthly",
+                "jpartitioner.tables[0].retention=3",
+                "jpartitioner.tables[0].retention-policy=drop",
+                "jpartitioner.refresh.interval=10m",
+                "jpartitioner.refresh.lock-scope=table",
+                "jpartitioner.refresh.deadline-driven=true").run(context -> {
+            var properties = context.getBean(JPartitionerProperties.class);
+
+            assertThat(properties.tables()).singleElement().satisfies(table -> {
+                assertThat(table.rangeType()).isEqualTo(RangeType.MONTHLY);
+                assertThat(table.retention()).isEqualTo(3);
+                assertThat(table.retentionPolicy()).isEqualTo(RetentionPolicy.DROP);
+            });
+            assertThat(properties.refresh()).isEqualTo(
+                    new JPartitionerProperties.Refresh(true, Duration.ofMinutes(10), PartitionRefreshScheduler.LockScope.TABLE, true));
+        });
+    }
+
+    @Test
+    void createsBeans() {
+        contextRunner.run(context -> assertThat(context)
+                .hasSingleBean(JdbcPartitionRepository.class)
+                .hasSingleBean(Partitions.class)
+                .hasSingleBean(PartitionRefreshScheduler.class)
+                .hasSingleBean(PartitionsHealthIndicator.class));
+    }
+
+    @Test
+    void backsOffWithoutJdbcTemplate() {
+        new ApplicationContextRunner()
+                .withConfiguration(AutoConfigurations.of(JPartitionerAutoConfiguration.class))
+                .run(context -> assertThat(context).doesNotHaveBean(Partitions.class));
+    }
+
+    @Test
+    void backsOffWhenBeansAreDefined() {
+        var partitions = mock(Partitions.class);
+        var scheduler = mock(PartitionRefreshScheduler.class);
+
+        contextRunner.withBean(Partitions.class, () -> partitions)
+                .withBean(PartitionRefreshScheduler.class, () -> scheduler)
+                .run(context -> {
+                    assertThat(context.getBean(Partitions.class)).isSameAs(partitions);
+                    assertThat(context.getBean(PartitionRefreshScheduler.class)).isSameAs(scheduler);
+                });
+    }
+
+    @Test
+    void doesNotCreateSchedulerWhenRefreshIsDisabled() {
+        contextRunner.withPropertyValues("jpartitioner.refresh.enabled=false")
+                .run(context -> assertThat(context).doesNotHaveBean(PartitionRefreshScheduler.class));
+    }
+
+    @Test
+    void startsSchedulerOnlyOnceApplicationIsReady() {
+        var scheduler = mock(PartitionRefreshScheduler.class);
+
+        contextRunner.withPropertyValues("jpartitioner.tables[0].name=events")
+                .withBean(PartitionRefreshScheduler.class, () -> scheduler)
+                .run(context -> {
+                    verify(scheduler, never()).start();
+
+                    publishApplicationReadyEvent(context);
+
+                    verify(scheduler).start();
+                });
+    }
+
+    @Test
+    void doesNotStartSchedulerWithoutTables() {
+        var scheduler = mock(PartitionRefreshScheduler.class);
+
+        contextRunner.withBean(PartitionRefreshScheduler.class, () -> scheduler)
+                .run(context -> {
+                    publishApplicationReadyEvent(context);
+
+                    verify(scheduler, never()).start();
+                });
+    }
+
+    private static void publishApplicationReadyEvent(AssertableApplicationContext context) {
+        context.publishEvent(new ApplicationReadyEvent(new SpringApplication(), new String[0], context.getSourceApplicationContext(), Duration.ZERO));
+    }
+}
@@ -0,0 +1,57 @@
+package com.maciejwalkowiak.jpartitioner.config;
+
+import com.maciejwalkowiak.jpartitioner.core.Partition;
+import com.maciejwalkowiak.jpartitioner.core.PartitionConfig;
+import com.maciejwalkowiak.jpartitioner.core.PartitionCreationMode;
+import com.maciejwalkowiak.jpartitioner.core.PartitionRepository;
+import com.maciejwalkowiak.jpartitioner.core.RangeType;
+import com.maciejwalkowiak.jpartitioner.core.RetentionPolicy;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.actuate.health.Status;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class PartitionsHealthIndicatorTest {
+    private final PartitionRepository partitionRepository = mock();
+
+    @Test
+    void isUpWhenFuturePartitionsExist() {
+        LocalDateTime now = LocalDateTime.now();
+        when(partitionRepository.findPartitions("events")).thenReturn(List.of(
+                Partition.of("events", RangeType.DAILY, now.minusDays(1)),
+                Partition.of("events", RangeType.DAILY, now),
+                Partition.of("events", RangeType.DAILY, now.plusDays(1))));
+
+        var health = new PartitionsHealthIndicator(partitionRepository, List.of(PartitionConfig.forTable("events").buffer(3)), 1).health();
+
+        assertThat(health.getStatus()).isEqualTo(Status.UP);
+        assertThat(health.getDetails()).containsEntry("headroom", Map.of("events", 2L));
+    }
+
+    @Test
+    void isDownUntilPartitionsAreCreated() {
+        when(partitionRepository.findPartitions("events")).thenReturn(List.of());
+
+        var health = new PartitionsHealthIndicator(partitionRepository, List.of(PartitionConfig.forTable("events").buffer(3)), 1).health();
+
+        assertThat(health.getStatus()).isEqualTo(Status.DOWN);
+    }
+
+    @Test
+    void bindsTableToPartitionConfig() {
+        var table = new JPartitionerProperties.Table("events", RangeType.MONTHLY, 3, RetentionPolicy.DROP, null, 2, PartitionCreationMode.ATTACH);
+
+        var config = table.toPartitionConfig();
+
+        assertThat(config.tableName()).isEqualTo("events");
+        assertThat(config.rangeType()).isEqualTo(RangeType.MONTHLY);
+        assertThat(config.retention()).isEqualTo(3);
+        assertThat(config.buffer()).isEqualTo(2);
+    }
+}
@@ -0,0 +1,170 @@
+package com.maciejwalkowiak.jpartitioner.core;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+import org.springframework.jdbc.UncategorizedSQLException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.Reader;
+import java.io.StringWriter;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class PartitionIngesterTest {
+    private final JdbcTemplate jdbcTemplate = mock();
+    private final PartitionRepository partitionRepository = mock();
+    // table name -> copied data
+    private final Map<String, String> copied = new LinkedHashMap<>();
+    private final Set<String> failingTables = new HashSet<>();
+
+    record Event(String name, LocalDateTime createdAt) {
+    }
+
+    @BeforeEach
+    void setUp() throws Exception {
+        Connection connection = mock();
+        PGConnection pgConnection = mock();
+        CopyManager copyManager = mock();
+        when(connection.unwrap(PGConnection.class)).thenReturn(pgConnection);
+        when(pgConnection.getCopyAPI()).thenReturn(copyManager);
+        when(copyManager.copyIn(anyString(), any(Reader.class))).thenAnswer(invocation -> {
+            String tableName = invocation.getArgument(0, String.class).split(" ")[1];
+            if (failingTables.remove(tableName)) {
+                throw new SQLException("invalid input syntax");
+            }
+            StringWriter data = new StringWriter();
+            invocation.getArgument(1, Reader.class).transferTo(data);
+            copied.merge(tableName, data.toString(), String::concat);
+            return data.toString().lines().count();
+        });
+        when(jdbcTemplate.execute(any(ConnectionCallback.class))).thenAnswer(invocation -> {
+            try {
+                return invocation.getArgument(0, ConnectionCallback.class).doInConnection(connection);
+            } catch (SQLException e) {
+                throw new UncategorizedSQLException("COPY", null, e);
+            }
+        });
+        when(partitionRepository.findPartitions("events")).thenReturn(List.of(Partition.of("events_20240209"), Partition.of("events_20240210")));
+    }
+
+    private PartitionIngester<Event> ingester() {
+        return new PartitionIngester<Event>(jdbcTemplate, partitionRepository, "events", List.of("name", "created_at"),
+                Event::createdAt, (event, columns) -> columns.add(event.name()).add(event.createdAt()));
+    }
+
+    @Nested
+    class Routing {
+
+        @Test
+        void copiesRowsToPartitionsAndUnknownRangesThroughParent() {
+            var ingester = ingester();
+            ingester.add(new Event("a", LocalDateTime.of(2024, 2, 9, 10, 0)));
+            ingester.add(new Event("b", LocalDateTime.of(2024, 2, 10, 0, 0)));
+            ingester.add(new Event("c", LocalDateTime.of(2024, 2, 11, 10, 0)));
+            ingester.flush();
+
+            assertThat(copied).containsExactly(
+                    entry("events_20240209", "a\t2024-02-09T10:00\n"),
+                    entry("events_20240210", "b\t2024-02-10T00:00\n"),
+                    entry("events", "c\t2024-02-11T10:00\n"));
+        }
+
+        @Test
+        void flushesFullBuffer() {
+            var ingester = ingester().maxRows(2);
+            ingester.add(new Event("a", LocalDateTime.of(2024, 2, 9, 10, 0)));
+            assertThat(copied).isEmpty();
+
+            ingester.add(new Event("b\tc", LocalDateTime.of(2024, 2, 9, 11, 0)));
+
+            assertThat(copied).containsExactly(entry("events_20240209", "a\t2024-02-09T10:00\nb\\tc\t2024-02-09T11:00\n"));
+        }
+
+        @Test
+        void copiesRowsOfDetachedPartitionThroughParent() {
+            var ingester = ingester().boundsRefreshInterval(Duration.ofNanos(1));
+            ingester.add(new Event("a", LocalDateTime.of(2024, 2, 9, 10, 0)));
+            when(partitionRepository.findPartitions("events")).thenReturn(List.of(Partition.of("events_20240210")));
+
+            ingester.add(new Event("b", LocalDateTime.of(2024, 2, 10, 10, 0)));
+            ingester.flush();
+
+            assertThat(copied).containsOnly(
+                    entry("events_20240210", "b\t2024-02-10T10:00\n"),
+                    entry("events", "a\t2024-02-09T10:00\n"));
+        }
+    }
+
+    @Nested
+    class Failures {
+
+        @Test
+        void passesFailedRowsToHandlerAndDropsThem() {
+            List<FailedRows> failures = new ArrayList<>();
+            var ingester = ingester().onFailure(failures::add);
+            failingTables.add("events_20240209");
+            ingester.add(new Event("a", LocalDateTime.of(2024, 2, 9, 10, 0)));
+            ingester.add(new Event("b", LocalDateTime.of(2024, 2, 10, 10, 0)));
+            ingester.flush();
+
+            assertThat(failures).singleElement().satisfies(failure -> {
+                assertThat(failure.tableName()).isEqualTo("events_20240209");
+                assertThat(failure.rows()).containsExactly("a\t2024-02-09T10:00");
+            });
+            assertThat(copied).containsExactly(entry("events_20240210", "b\t2024-02-10T10:00\n"));
+
+            ingester.add(new Event("c", LocalDateTime.of(2024, 2, 9, 11, 0)));
+            ingester.flush();
+
+            assertThat(copied).containsEntry("events_20240209", "c\t2024-02-09T11:00\n");
+        }
+
+        @Test
+        void rethrowsFailureByDefaultAndCopiesRemainingBuffers() {
+            var ingester = ingester();
+            failingTables.add("events_20240209");
+            ingester.add(new Event("a", LocalDateTime.of(2024, 2, 9, 10, 0)));
+            ingester.add(new Event("b", LocalDateTime.of(2024, 2, 10, 10, 0)));
+
+            assertThatThrownBy(ingester::flush).hasRootCauseInstanceOf(SQLException.class);
+            assertThat(copied).containsExactly(entry("events_20240210", "b\t2024-02-10T10:00\n"));
+
+            ingester.flush();
+            assertThat(copied).doesNotContainKey("events_20240209");
+        }
+
+        @Test
+        void discardsPartiallyWrittenRow() {
+            var ingester = new PartitionIngester<Event>(jdbcTemplate, partitionRepository, "events", List.of("name", "created_at"),
+                    Event::createdAt, (event, columns) -> {
+                        columns.add(event.name());
+                        if (event.name().equals("invalid")) {
+                            throw new IllegalArgumentException("invalid event");
+                        }
+                        columns.add(event.createdAt());
+                    });
+            ingester.add(new Event("a", LocalDateTime.of(2024, 2, 9, 10, 0)));
+
+            assertThatThrownBy(() -> ingester.add(new Event("invalid", LocalDateTime.of(2024, 2, 9, 11, 0))))
+                    .isInstanceOf(IllegalArgumentException.class);
+            ingester.flush();
+
+            assertThat(copied).containsExactly(entry("events_20240209", "a\t2024-02-09T10:00\n"));
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.maciejwalkowiak.jpartitioner.core;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class PartitionRefreshSchedulerTest {
+    private static final ZoneId ZONE = ZoneId.of("Europe/Warsaw");
+
+    private final Partitions partitions = mock();
+    private final JdbcTemplate jdbcTemplate = mock();
+    private final AtomicBoolean lockAvailable = new AtomicBoolean(true);
+    private final PartitionConfig config = PartitionConfig.forTable("events").daily();
+    private PartitionRefreshScheduler scheduler;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() throws Exception {
+        Connection connection = mock();
+        PreparedStatement statement = mock();
+        ResultSet resultSet = mock();
+        when(connection.prepareStatement(anyString())).thenReturn(statement);
+        when(statement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true);
+        when(resultSet.getBoolean(1)).thenAnswer(invocation -> lockAvailable.get());
+        when(jdbcTemplate.execute(any(ConnectionCallback.class))).thenAnswer(invocation -> invocation.getArgument(0, ConnectionCallback.class).doInConnection(connection));
+        when(partitions.refreshAll(anyList())).thenReturn(new RefreshReport(List.of(), List.of()));
+        when(partitions.nextChange(any(), any())).thenAnswer(invocation -> config.rangeType().plus(config.rangeType().truncate(invocation.getArgument(0, LocalDateTime.class)), 1));
+
+        scheduler = new PartitionRefreshScheduler(partitions, jdbcTemplate, List.of(config))
+                .deadlineDriven(true)
+                .interval(Duration.ofMillis(50))
+                .clock(Clock.fixed(LocalDateTime.of(2025, 1, 2, 10, 30).atZone(ZONE).toInstant(), ZONE));
+    }
+
+    @AfterEach
+    void tearDown() {
+        scheduler.stop();
+    }
+
+    @Nested
+    class Scheduling {
+
+        @Test
+        void schedulesRefreshAtNextChange() {
+            assertThat(scheduler.untilNextChange()).isEqualTo(Duration.ofHours(13).plusMinutes(30));
+        }
+
+        @Test
+        void accountsForDaylightSavingTime() {
+            // clocks move from 02:00 to 03:00 on 2025-03-30, so the day is 23 hours long
+            scheduler.clock(Clock.fixed(LocalDateTime.of(2025, 3, 30, 1, 0).atZone(ZONE).toInstant(), ZONE));
+
+            assertThat(scheduler.untilNextChange()).isEqualTo(Duration.ofHours(22));
+        }
+
+        @Test
+        void refreshesImmediatelyWhenNextChangeIsDue() {
+            when(partitions.nextChange(any(), any())).thenAnswer(invocation -> invocation.getArgument(0, LocalDateTime.class));
+
+            assertThat(scheduler.untilNextChange()).isEqualTo(Duration.ZERO);
+        }
+
+        @Test
+        void waitsForNextChangeAfterRefresh() {
+            scheduler.start();
+
+            verify(partitions, after(300).times(1)).refreshAll(anyList());
+        }
+
+        @Test
+        void retriesFailedRefreshAtInterval() {
+            when(partitions.refreshAll(anyList())).thenReturn(new RefreshReport(List.of(), List.of(new RefreshFailure("events", new RuntimeException("failed")))));
+
+            scheduler.start();
+
+            verify(partitions, timeout(1000).atLeast(3)).refreshAll(anyList());
+        }
+
+        @Test
+        void retriesAtIntervalWhenLockIsNotAcquired() {
+            lockAvailable.set(false);
+
+            scheduler.start();
+
+            verify(jdbcTemplate, timeout(1000).atLeast(3)).execute(any(ConnectionCallback.class));
+            verify(partitions, never()).refreshAll(anyList());
+
+            lockAvailable.set(true);
+
+            verify(partitions, timeout(1000)).refreshAll(anyList());
+        }
+    }
+
+    @Nested
+    class Trigger {
+
+        @Test
+        void coalescesTriggersDuringRefresh() throws Exception {
+            CountDownLatch refreshStarted = new CountDownLatch(1);
+            CountDownLatch refreshBlocked = new CountDownLatch(1);
+            when(partitions.refreshAll(anyList())).thenAnswer(invocation -> {
+                refreshStarted.countDown();
+                refreshBlocked.await();
+                return new RefreshReport(List.of(), List.of());
+            });
+
+            scheduler.start();
+            assertThat(refreshStarted.await(1, TimeUnit.SECONDS)).isTrue();
+            scheduler.trigger();
+            scheduler.trigger();
+            scheduler.trigger();
+            refreshBlocked.countDown();
+
+            verify(partitions, after(300).times(2)).refreshAll(anyList());
+        }
+
+        @Test
+        void refreshesImmediately() {
+            scheduler.start();
+            verify(partitions, timeout(1000)).refreshAll(anyList());
+
+            scheduler.trigger();
+
+            verify(partitions, timeout(1000).times(2)).refreshAll(anyList());
+        }
+    }
+}
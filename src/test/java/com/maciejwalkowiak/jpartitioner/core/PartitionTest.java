@@ -3,7 +3,9 @@ package com.maciejwalkowiak.jpartitioner.core;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
@@ -30,6 +32,35 @@ class PartitionTest {
             assertThat(add.end()).isEqualTo(LocalDateTime.of(2024, 1, 6, 0, 0, 0));
         }
 
+        @Test
+        void throwsWhenDateIsInvalid() {
+            assertThatThrownBy(() -> Partition.of("events_2023x112")).isInstanceOf(IllegalStateException.class);
+        }
+
+        @Test
+        void throwsWhenDateDoesNotExist() {
+            assertThatThrownBy(() -> Partition.of("events_20250230"))
+                    .isInstanceOf(IllegalStateException.class)
+                    .hasMessageContaining("does not exist");
+        }
+
+        @Test
+        void rejectsBoundsThatDoNotMatchName() {
+            var start = LocalDateTime.of(2024, 1, 5, 0, 0);
+
+            assertThatThrownBy(() -> new Partition("events_20240106", RangeType.DAILY, start, start.plusDays(1))).isInstanceOf(IllegalArgumentException.class);
+            assertThatThrownBy(() -> new Partition("events_20240105", RangeType.DAILY, start, start.plusDays(2))).isInstanceOf(IllegalArgumentException.class);
+            assertThatThrownBy(() -> new Partition("events_20240105", RangeType.DAILY, start.plusHours(1), start.plusDays(1))).isInstanceOf(IllegalArgumentException.class);
+        }
+
+        @Test
+        void createsPartitionForDate() {
+            var partition = Partition.of("events", RangeType.DAILY, LocalDate.of(2024, 1, 5));
+            assertThat(partition).isEqualTo(Partition.of("events_20240105"));
+            assertThat(partition.startEpochSecond()).isEqualTo(LocalDateTime.of(2024, 1, 5, 0, 0).toEpochSecond(ZoneOffset.UTC));
+            assertThat(partition.endEpochSecond() - partition.startEpochSecond()).isEqualTo(86400);
+        }
+
         @Test
         void isValid() {
             var p = Partition.of("events_20230112");
@@ -46,6 +77,17 @@ class PartitionTest {
             assertThatThrownBy(() -> p.validate(config)).isInstanceOf(IllegalStateException.class);
         }
 
+        @Test
+        void isInvalidWhenParentTableDoesNotMatch() {
+            var config = PartitionConfig.forTable("events")
+                    .rangeType(RangeType.DAILY);
+            var p = Partition.of("events_archive_20230112");
+
+            assertThatThrownBy(() -> p.validate(config))
+                    .isInstanceOf(IllegalStateException.class)
+                    .hasMessageContaining("belongs to table events_archive");
+        }
+
         @Test
         void isInvalidWhenSuffixDoesNotMatch() {
             var config = PartitionConfig.forTable("events")
@@ -66,6 +108,11 @@ class PartitionTest {
             assertThat(add.end()).isEqualTo(LocalDateTime.of(2024, 2, 1, 0, 0, 0));
         }
 
+        @Test
+        void createsPartitionForDate() {
+            assertThat(Partition.of("events", RangeType.MONTHLY, LocalDate.of(2024, 1, 5))).isEqualTo(Partition.of("events_202401"));
+        }
+
         @Test
         void isValid() {
             var p = Partition.of("events_202301");
@@ -92,4 +139,65 @@ class PartitionTest {
         }
     }
 
-}
\ No newline at end of file
+    @Nested
+    class Hourly {
+
+        @Test
+        void resolvesRange() {
+            var partition = Partition.of("events_2024010513");
+            assertThat(partition.rangeType()).isEqualTo(RangeType.HOURLY);
+            assertThat(partition.start()).isEqualTo(LocalDateTime.of(2024, 1, 5, 13, 0, 0));
+            assertThat(partition.end()).isEqualTo(LocalDateTime.of(2024, 1, 5, 14, 0, 0));
+        }
+
+        @Test
+        void createsPartitionForDate() {
+            assertThat(Partition.of("events", RangeType.HOURLY, LocalDateTime.of(2024, 1, 5, 13, 59)))
+                    .isEqualTo(Partition.of("events_2024010513"));
+        }
+    }
+
+    @Nested
+    class Weekly {
+
+        @Test
+        void resolvesRange() {
+            var partition = Partition.of("events_2025w01");
+            assertThat(partition.rangeType()).isEqualTo(RangeType.WEEKLY);
+            assertThat(partition.start()).isEqualTo(LocalDateTime.of(2024, 12, 30, 0, 0, 0));
+            assertThat(partition.end()).isEqualTo(LocalDateTime.of(2025, 1, 6, 0, 0, 0));
+        }
+
+        @Test
+        void createsPartitionForDate() {
+            assertThat(Partition.of("events", RangeType.WEEKLY, LocalDate.of(2025, 1, 1)))
+                    .isEqualTo(Partition.of("events_2025w01"));
+        }
+
+        @Test
+        void throwsWhenWeekIsInvalid() {
+            assertThatThrownBy(() -> Partition.of("events_2024w60")).isInstanceOf(IllegalStateException.class);
+        }
+    }
+
+    @Nested
+    class Quarterly {
+
+        @Test
+        void resolvesRange() {
+            var partition = Partition.of("events_2024q4");
+            assertThat(partition.rangeType()).isEqualTo(RangeType.QUARTERLY);
+            assertThat(partition.start()).isEqualTo(LocalDateTime.of(2024, 10, 1, 0, 0, 0));
+            assertThat(partition.end()).isEqualTo(LocalDateTime.of(2025, 1, 1, 0, 0, 0));
+        }
+
+        @Test
+        void isInvalidWhenRangeTypeDoesNotMatch() {
+            var config = PartitionConfig.forTable("events").monthly();
+
+            assertThatThrownBy(() -> Partition.of("events_2024q4").validate(config))
+                    .isInstanceOf(IllegalStateException.class)
+                    .hasMessageContaining("has QUARTERLY range");
+        }
+    }
+}
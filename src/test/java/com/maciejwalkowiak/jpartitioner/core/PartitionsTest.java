@@ -1,12 +1,25 @@
 package com.maciejwalkowiak.jpartitioner.core;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.EnumSource;
 
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
 import java.util.List;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
 
 import static org.assertj.core.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -19,7 +32,7 @@ class PartitionsTest {
     class Daily {
 
         @ParameterizedTest
-        @EnumSource(RetentionPolicy.class)
+        @EnumSource(value = RetentionPolicy.class, names = {"DETACH", "DROP"})
         void refreshesPartitions(RetentionPolicy retentionPolicy) {
             when(partitionRepository.findPartitions("events")).thenReturn(List.of(Partition.of("events_20241228"), Partition.of("events_20241227")));
 
@@ -52,6 +65,25 @@ class PartitionsTest {
             }));
         }
 
+        @Test
+        void archivesPartitions() {
+            when(partitionRepository.findPartitions("events")).thenReturn(List.of(Partition.of("events_20241228"), Partition.of("events_20250102")));
+
+            partitions.refresh(LocalDate.of(2025, 1, 2), PartitionConfig.forTable("events")
+                    .archive(0, Path.of("/archive"))
+                    .buffer(1));
+
+            verify(partitionRepository).archivePartitions(List.of(Partition.of("events_20241228")), Path.of("/archive"));
+        }
+
+        @Test
+        void failsWhenArchiveDirectoryIsNotConfigured() {
+            when(partitionRepository.findPartitions("events")).thenReturn(List.of());
+
+            assertThatThrownBy(() -> partitions.refresh(LocalDate.of(2025, 1, 2), PartitionConfig.forTable("events")
+                    .retention(3, RetentionPolicy.ARCHIVE))).isInstanceOf(IllegalStateException.class);
+        }
+
         @Test
         void failsWhenInvalidPartitionNameExists() {
             when(partitionRepository.findPartitions("events")).thenReturn(List.of(Partition.of("events_202412"), Partition.of("events_20241227")));
@@ -77,7 +109,7 @@ class PartitionsTest {
         }
 
         @ParameterizedTest
-        @EnumSource(RetentionPolicy.class)
+        @EnumSource(value = RetentionPolicy.class, names = {"DETACH", "DROP"})
         void refreshesPartitions(RetentionPolicy retentionPolicy) {
             when(partitionRepository.findPartitions("events")).thenReturn(List.of(Partition.of("events_202412"), Partition.of("events_202411"), Partition.of("events_202410")));
 
@@ -103,4 +135,575 @@ class PartitionsTest {
             }));
         }
     }
-}
\ No newline at end of file
+
+    @Nested
+    class Hourly {
+
+        @Test
+        void refreshesPartitions() {
+            when(partitionRepository.findPartitions("events")).thenReturn(List.of(Partition.of("events_2025010209"), Partition.of("events_2025010210")));
+
+            partitions.refresh(LocalDateTime.of(2025, 1, 2, 11, 30), PartitionConfig.forTable("events")
+                    .hourly()
+                    .buffer(2)
+                    .retention(1, RetentionPolicy.DROP));
+
+            verify(partitionRepository).dropPartitions(List.of(Partition.of("events_2025010209")));
+            verify(partitionRepository).createPartitions(List.of(Partition.of("events_2025010211"), Partition.of("events_2025010212")));
+        }
+    }
+
+    @Nested
+    class DefaultPartition {
+
+        @Test
+        void drainsDefaultPartitionBeforeAttaching() {
+            var partition = Partition.of("events_20250103");
+            when(partitionRepository.findPartitions("events")).thenReturn(List.of(Partition.of("events_20250102")));
+            when(partitionRepository.countDefaultPartitionPages("events")).thenReturn(25L, 26L);
+
+            partitions.refresh(LocalDate.of(2025, 1, 2), PartitionConfig.forTable("events")
+                    .retention(0, RetentionPolicy.DETACH)
+                    .buffer(2)
+                    .defaultPartition(10, Duration.ZERO));
+
+            var inOrder = inOrder(partitionRepository);
+            inOrder.verify(partitionRepository).createDefaultPartition("events");
+            inOrder.verify(partitionRepository).createDetachedPartitions(List.of(partition), true);
+            inOrder.verify(partitionRepository).moveRowsFromDefaultPartition(partition, 0, 10);
+            inOrder.verify(partitionRepository).moveRowsFromDefaultPartition(partition, 10, 10);
+            // the last batch includes pages added during the drain
+            inOrder.verify(partitionRepository).moveRowsFromDefaultPartition(partition, 20, Integer.MAX_VALUE);
+            inOrder.verify(partitionRepository).excludeFromDefaultPartition(partition);
+            inOrder.verify(partitionRepository).moveRowsFromDefaultPartition(partition, 0, 10);
+            inOrder.verify(partitionRepository).moveRowsFromDefaultPartition(partition, 10, 10);
+            inOrder.verify(partitionRepository).moveRowsFromDefaultPartition(partition, 20, Integer.MAX_VALUE);
+            inOrder.verify(partitionRepository).attachPartitionFromDefault(partition);
+            verify(partitionRepository, never()).attachPartitions(any());
+            verify(partitionRepository, never()).createPartitions(any());
+        }
+    }
+
+    @Nested
+    class Restore {
+        @TempDir
+        Path archiveDirectory;
+
+        @Test
+        void restoresPartitionsThatDoNotExist() throws IOException {
+            archive("events_20241201");
+            archive("events_20241203");
+            when(partitionRepository.findPartitions("events")).thenReturn(List.of(Partition.of("events_20241202")));
+
+            var restored = partitions.restore(PartitionConfig.forTable("events").archive(3, archiveDirectory),
+                    LocalDateTime.of(2024, 12, 1, 12, 0), LocalDateTime.of(2024, 12, 4, 0, 0));
+
+            assertThat(restored).containsExactly(Partition.of("events_20241201"), Partition.of("events_20241203"));
+            verify(partitionRepository).restorePartition(Partition.of("events_20241201"), archiveDirectory);
+            verify(partitionRepository).restorePartition(Partition.of("events_20241203"), archiveDirectory);
+            verify(partitionRepository, never()).restorePartition(eq(Partition.of("events_20241202")), any());
+        }
+
+        @Test
+        void restoresNothingWhenArchiveIsMissing() throws IOException {
+            archive("events_20241201");
+            when(partitionRepository.findPartitions("events")).thenReturn(List.of());
+
+            assertThatThrownBy(() -> partitions.restore(PartitionConfig.forTable("events").archive(3, archiveDirectory),
+                    LocalDateTime.of(2024, 12, 1, 0, 0), LocalDateTime.of(2024, 12, 3, 0, 0)))
+                    .isInstanceOf(IllegalStateException.class)
+                    .hasMessageContaining("events_20241202");
+            verify(partitionRepository, never()).restorePartition(any(), any());
+        }
+
+        private void archive(String partitionName) throws IOException {
+            Files.createDirectories(archiveDirectory.resolve(partitionName));
+            Files.writeString(archiveDirectory.resolve(partitionName).resolve("manifest.properties"), "rows=0\nchunks=0\n");
+        }
+    }
+
+    @Nested
+    class Metrics {
+        private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+        private final LocalDateTime date = LocalDateTime.of(2025, 1, 2, 10, 30);
+        private final Clock clock = Clock.fixed(date.toInstant(ZoneOffset.UTC), ZoneOffset.UTC);
+
+        @Test
+        void recordsRefreshMetrics() {
+            when(partitionRepository.findPartitions("events")).thenReturn(List.of());
+            when(partitionRepository.endSession()).thenReturn(List.of(
+                    new DdlExecution(List.of("CREATE TABLE events_20250102 PARTITION OF events FOR VALUES FROM ('2025-01-02T00:00:00') TO ('2025-01-03T00:00:00')"), 1, Duration.ZERO, Duration.ofMillis(5))));
+
+            new Partitions(partitionRepository)
+                    .meterRegistry(meterRegistry, clock)
+                    .refresh(date, PartitionConfig.forTable("events").retention(1, RetentionPolicy.DROP).buffer(3));
+
+            assertThat(meterRegistry.get("jpartitioner.refresh").tags("table", "events", "outcome", "success").timer().count()).isEqualTo(1);
+            assertThat(meterRegistry.get("jpartitioner.ddl").tags("table", "events", "type", "create", "outcome", "success").timer().count()).isEqualTo(1);
+            assertThat(meterRegistry.get("jpartitioner.partitions.created").tag("table", "events").counter().count()).isEqualTo(4);
+            assertThat(meterRegistry.get("jpartitioner.partitions").tag("table", "events").gauge().value()).isEqualTo(4);
+            assertThat(meterRegistry.get("jpartitioner.partitions.headroom").tag("table", "events").gauge().value()).isEqualTo(2);
+        }
+
+        @Test
+        void countsPartitionsThatExistAfterRefresh() {
+            // partitions within retention that were removed by retention budget earlier are not recreated
+            when(partitionRepository.findPartitions("events")).thenReturn(List.of(Partition.of("events_20250101"), Partition.of("events_20250102")));
+            when(partitionRepository.estimatePartitions(anyList(), eq(false))).thenAnswer(invocation -> invocation.<List<Partition>>getArgument(0).stream()
+                    .map(it -> new PartitionEstimate(it, 100, 10, 1, false))
+                    .toList());
+
+            new Partitions(partitionRepository)
+                    .meterRegistry(meterRegistry, clock)
+                    .refresh(date, PartitionConfig.forTable("events").retention(3, RetentionPolicy.DROP).retentionBytes(250).buffer(2));
+
+            assertThat(meterRegistry.get("jpartitioner.partitions").tag("table", "events").gauge().value()).isEqualTo(3);
+            assertThat(meterRegistry.get("jpartitioner.partitions.headroom").tag("table", "events").gauge().value()).isEqualTo(1);
+        }
+
+        @Test
+        void resolvesDdlTypeFromFirstChangingStatement() {
+            when(partitionRepository.findPartitions("events")).thenReturn(List.of());
+            when(partitionRepository.endSession()).thenReturn(List.of(
+                    new DdlExecution(List.of("LOCK TABLE events_default IN EXCLUSIVE MODE", "ALTER TABLE events ATTACH PARTITION events_20250102 FOR VALUES FROM ('2025-01-02T00:00:00') TO ('2025-01-03T00:00:00')"), 1, Duration.ZERO, Duration.ofMillis(5))));
+
+            new Partitions(partitionRepository)
+                    .meterRegistry(meterRegistry, clock)
+                    .refresh(date, PartitionConfig.forTable("events").retention(0, RetentionPolicy.DROP).buffer(1));
+
+            assertThat(meterRegistry.get("jpartitioner.ddl").tags("table", "events", "type", "attach").timer().count()).isEqualTo(1);
+        }
+
+        @Test
+        void recordsFailedRefresh() {
+            when(partitionRepository.findPartitions("events")).thenThrow(new IllegalStateException("boom"));
+
+            var partitions = new Partitions(partitionRepository).meterRegistry(meterRegistry, clock);
+
+            assertThatThrownBy(() -> partitions.refresh(date, PartitionConfig.forTable("events"))).isInstanceOf(IllegalStateException.class);
+            assertThat(meterRegistry.get("jpartitioner.refresh").tags("table", "events", "outcome", "failure").timer().count()).isEqualTo(1);
+        }
+
+        @Test
+        void recordsFailedStatements() {
+            when(partitionRepository.findPartitions("events")).thenReturn(List.of());
+            doThrow(new IllegalStateException("boom")).when(partitionRepository).createPartitions(anyList());
+            when(partitionRepository.endSession()).thenReturn(List.of(
+                    new DdlExecution(List.of("CREATE TABLE events_20250102 PARTITION OF events FOR VALUES FROM ('2025-01-02T00:00:00') TO ('2025-01-03T00:00:00')"), 1, Duration.ZERO, Duration.ofMillis(5), true)));
+
+            var partitions = new Partitions(partitionRepository).meterRegistry(meterRegistry, clock);
+
+            assertThatThrownBy(() -> partitions.refresh(date, PartitionConfig.forTable("events").retention(0, RetentionPolicy.DROP).buffer(1))).isInstanceOf(IllegalStateException.class);
+            assertThat(meterRegistry.get("jpartitioner.ddl").tags("table", "events", "type", "create", "outcome", "failure").timer().count()).isEqualTo(1);
+        }
+    }
+
+    @Nested
+    class Plan {
+
+        @Test
+        void estimatesChangesWithoutApplyingThem() {
+            var expired = Partition.of("events_20241228");
+            var created = Partition.of("events_20250103");
+            when(partitionRepository.findPartitions("events")).thenReturn(List.of(expired, Partition.of("events_20250102")));
+            when(partitionRepository.estimatePartitions(List.of(expired), false)).thenReturn(List.of(new PartitionEstimate(expired, 8192, 100, 1, false)));
+            when(partitionRepository.estimatePartitions(List.of(created), true)).thenReturn(List.of(new PartitionEstimate(created, 0, 0, 0, true)));
+
+            var plan = partitions.plan(LocalDate.of(2025, 1, 2), PartitionConfig.forTable("events")
+                    .retention(0, RetentionPolicy.DROP)
+                    .buffer(2));
+
+            assertThat(plan.remove()).extracting(PartitionEstimate::partition).containsExactly(expired);
+            assertThat(plan.add()).extracting(PartitionEstimate::partition).containsExactly(created);
+            assertThat(plan.bytesToRemove()).isEqualTo(8192);
+            assertThat(plan.locksBusyParent()).isTrue();
+            verify(partitionRepository, never()).dropPartitions(any());
+            verify(partitionRepository, never()).createPartitions(any());
+        }
+    }
+
+    @Nested
+    class RetentionBudget {
+
+        @Test
+        void removesOldestPartitionsExceedingBudget() {
+            when(partitionRepository.findPartitions("events")).thenReturn(List.of(
+                    Partition.of("events_20241230"),
+                    Partition.of("events_20241231"),
+                    Partition.of("events_20250101"),
+                    Partition.of("events_20250102")));
+            when(partitionRepository.estimatePartitions(anyList(), eq(false))).thenAnswer(invocation -> invocation.<List<Partition>>getArgument(0).stream()
+                    .map(it -> new PartitionEstimate(it, 100, 10, 1, false))
+                    .toList());
+
+            var result = partitions.refresh(LocalDate.of(2025, 1, 2), PartitionConfig.forTable("events")
+                    .retention(3, RetentionPolicy.DROP)
+                    .retentionBytes(250)
+                    .buffer(1));
+
+            assertThat(result.removed()).containsExactly(Partition.of("events_20241231"), Partition.of("events_20241230"));
+            verify(partitionRepository).dropPartitions(List.of(Partition.of("events_20241231"), Partition.of("events_20241230")));
+        }
+
+        @Test
+        void neverRemovesCurrentPartition() {
+            when(partitionRepository.findPartitions("events")).thenReturn(List.of(Partition.of("events_20250102")));
+            when(partitionRepository.estimatePartitions(anyList(), eq(false))).thenAnswer(invocation -> invocation.<List<Partition>>getArgument(0).stream()
+                    .map(it -> new PartitionEstimate(it, 100, 1_000_000, 1, false))
+                    .toList());
+
+            var result = partitions.refresh(LocalDate.of(2025, 1, 2), PartitionConfig.forTable("events")
+                    .retention(3, RetentionPolicy.DROP)
+                    .retentionRows(1000)
+                    .buffer(1));
+
+            assertThat(result.removed()).isEmpty();
+        }
+
+        @Test
+        void doesNotRecreatePartitionsRemovedByBudget() {
+            when(partitionRepository.findPartitions("events")).thenReturn(
+                    List.of(Partition.of("events_20241230"), Partition.of("events_20241231"), Partition.of("events_20250101"), Partition.of("events_20250102")),
+                    List.of(Partition.of("events_20250101"), Partition.of("events_20250102")));
+            when(partitionRepository.estimatePartitions(anyList(), eq(false))).thenAnswer(invocation -> invocation.<List<Partition>>getArgument(0).stream()
+                    .map(it -> new PartitionEstimate(it, 100, 10, 1, false))
+                    .toList());
+            var config = PartitionConfig.forTable("events")
+                    .retention(3, RetentionPolicy.DETACH)
+                    .retentionBytes(250)
+                    .buffer(1);
+
+            var first = partitions.refresh(LocalDate.of(2025, 1, 2), config);
+            var second = partitions.refresh(LocalDate.of(2025, 1, 2), config);
+
+            assertThat(first.removed()).containsExactly(Partition.of("events_20241231"), Partition.of("events_20241230"));
+            assertThat(second.removed()).isEmpty();
+            assertThat(second.added()).isEmpty();
+            verify(partitionRepository, never()).createPartitions(argThat(it -> !it.isEmpty()));
+        }
+    }
+
+    @Nested
+    class TablespaceTiering {
+
+        @Test
+        void createsPartitionsInHotTablespaceAndMovesOldOnes() {
+            when(partitionRepository.findPartitions("events")).thenReturn(List.of(
+                    Partition.of("events_20241230"),
+                    Partition.of("events_20241231"),
+                    Partition.of("events_20250101")));
+            when(partitionRepository.moveToTablespace(any(), eq("bulk"))).thenReturn(true);
+
+            partitions.refresh(LocalDate.of(2025, 1, 2), PartitionConfig.forTable("events")
+                    .retention(3, RetentionPolicy.DROP)
+                    .buffer(1)
+                    .tablespace("fast")
+                    .tablespace(2, "bulk"));
+
+            var inOrder = inOrder(partitionRepository);
+            inOrder.verify(partitionRepository).useTablespace("fast");
+            inOrder.verify(partitionRepository).createPartitions(List.of(Partition.of("events_20250102")));
+            inOrder.verify(partitionRepository).moveToTablespace(Partition.of("events_20241230"), "bulk");
+            inOrder.verify(partitionRepository).moveToTablespace(Partition.of("events_20241231"), "bulk");
+            verify(partitionRepository, times(2)).moveToTablespace(any(), any());
+        }
+
+        @Test
+        void doesNotMovePartitionsOutsideOfTieringWindow() {
+            when(partitionRepository.findPartitions("events")).thenReturn(List.of(Partition.of("events_20241230")));
+
+            partitions.clock(Clock.fixed(LocalDateTime.of(2025, 1, 2, 10, 0).toInstant(ZoneOffset.UTC), ZoneOffset.UTC))
+                    .refresh(LocalDate.of(2025, 1, 2), PartitionConfig.forTable("events")
+                            .retention(3, RetentionPolicy.DROP)
+                            .tablespace(1, "bulk")
+                            .tieringWindow(LocalTime.of(22, 0), LocalTime.of(6, 0), Duration.ZERO));
+
+            verify(partitionRepository, never()).moveToTablespace(any(), any());
+        }
+
+        @Test
+        void movesPartitionsWithinTieringWindow() {
+            when(partitionRepository.findPartitions("events")).thenReturn(List.of(Partition.of("events_20241230")));
+
+            partitions.clock(Clock.fixed(LocalDateTime.of(2025, 1, 2, 23, 0).toInstant(ZoneOffset.UTC), ZoneOffset.UTC))
+                    .refresh(LocalDate.of(2025, 1, 2), PartitionConfig.forTable("events")
+                            .retention(3, RetentionPolicy.DROP)
+                            .tablespace(1, "bulk")
+                            .tieringWindow(LocalTime.of(22, 0), LocalTime.of(6, 0), Duration.ZERO));
+
+            verify(partitionRepository).moveToTablespace(Partition.of("events_20241230"), "bulk");
+        }
+
+        @Test
+        void includesEndOfTieringWindow() {
+            assertThat(PartitionConfig.forTable("events").isWithinTieringWindow(LocalTime.MAX)).isTrue();
+            assertThat(PartitionConfig.forTable("events").tieringWindow(LocalTime.of(22, 0), LocalTime.of(2, 0), Duration.ZERO)
+                    .isWithinTieringWindow(LocalTime.of(2, 0))).isTrue();
+            assertThat(PartitionConfig.forTable("events").tieringWindow(LocalTime.of(22, 0), LocalTime.of(2, 0), Duration.ZERO)
+                    .isWithinTieringWindow(LocalTime.of(2, 0, 1))).isFalse();
+        }
+    }
+
+    @Nested
+    class IndexTemplates {
+
+        @Test
+        void buildsIndexesBeforeAttaching() {
+            when(partitionRepository.findPartitions("events")).thenReturn(List.of(Partition.of("events_20250102")));
+            var config = PartitionConfig.forTable("events")
+                    .retention(0, RetentionPolicy.DETACH)
+                    .buffer(2)
+                    .index("name_idx", "(name)");
+
+            partitions.refresh(LocalDate.of(2025, 1, 2), config);
+
+            var inOrder = inOrder(partitionRepository);
+            inOrder.verify(partitionRepository).createDetachedPartitions(List.of(Partition.of("events_20250103")), false);
+            inOrder.verify(partitionRepository).createIndexes(Partition.of("events_20250103"), List.of(new IndexTemplate("name_idx", "(name)", false)));
+            inOrder.verify(partitionRepository).attachPartitions(List.of(Partition.of("events_20250103")));
+            verify(partitionRepository, never()).createPartitions(any());
+        }
+
+        @Test
+        void buildsIndexesAfterDrainingDefaultPartition() {
+            var partition = Partition.of("events_20250103");
+            when(partitionRepository.findPartitions("events")).thenReturn(List.of(Partition.of("events_20250102")));
+            var config = PartitionConfig.forTable("events")
+                    .retention(0, RetentionPolicy.DETACH)
+                    .buffer(2)
+                    .defaultPartition(10, Duration.ZERO)
+                    .index("name_idx", "(name)");
+
+            partitions.refresh(LocalDate.of(2025, 1, 2), config);
+
+            var inOrder = inOrder(partitionRepository);
+            inOrder.verify(partitionRepository).createDetachedPartitions(List.of(partition), false);
+            inOrder.verify(partitionRepository).moveRowsFromDefaultPartition(partition, 0, Integer.MAX_VALUE);
+            inOrder.verify(partitionRepository).createIndexes(partition, List.of(new IndexTemplate("name_idx", "(name)", false)));
+            inOrder.verify(partitionRepository).excludeFromDefaultPartition(partition);
+            inOrder.verify(partitionRepository).attachPartitionFromDefault(partition);
+        }
+    }
+
+    @Nested
+    class AutoAnalyze {
+
+        @Test
+        void analyzesChangedPartitionsAndParent() {
+            when(partitionRepository.findPartitions("events")).thenReturn(List.of(Partition.of("events_20250101"), Partition.of("events_20250102")));
+            when(partitionRepository.findPartitionsToAnalyze(List.of(Partition.of("events_20250101"), Partition.of("events_20250102")), 0.1))
+                    .thenReturn(List.of(Partition.of("events_20250102")));
+
+            partitions.refresh(LocalDateTime.of(2025, 1, 2, 12, 0), PartitionConfig.forTable("events")
+                    .retention(1, RetentionPolicy.DROP)
+                    .buffer(1)
+                    .autoAnalyze(0.1, Duration.ofMinutes(1)));
+
+            var inOrder = inOrder(partitionRepository);
+            inOrder.verify(partitionRepository).analyze("events_20250102");
+            inOrder.verify(partitionRepository).analyzeParent("events");
+            verify(partitionRepository, never()).analyze("events_20250101");
+            verify(partitionRepository, never()).analyze("events");
+        }
+
+        @Test
+        void doesNotAnalyzeParentWhenPartitionsDidNotChange() {
+            when(partitionRepository.findPartitions("events")).thenReturn(List.of(Partition.of("events_20250102")));
+
+            partitions.refresh(LocalDateTime.of(2025, 1, 2, 12, 0), PartitionConfig.forTable("events")
+                    .retention(0, RetentionPolicy.DROP)
+                    .buffer(1)
+                    .autoAnalyze(0.1, Duration.ofMinutes(1)));
+
+            verify(partitionRepository, never()).analyze(any());
+            verify(partitionRepository, never()).analyzeParent(any());
+        }
+    }
+
+    @Nested
+    class Sharded {
+        private final PartitionRepository otherShardRepository = mock();
+
+        @Test
+        void aggregatesResultsPerShard() {
+            when(partitionRepository.findPartitions("events")).thenReturn(List.of(Partition.of("events_20250102")));
+            when(otherShardRepository.findPartitions("events")).thenThrow(new IllegalStateException("boom"));
+
+            var report = new ShardedPartitions(2)
+                    .shard("shard-1", partitions)
+                    .shard("shard-2", new Partitions(otherShardRepository))
+                    .refreshAll(LocalDate.of(2025, 1, 2), List.of(PartitionConfig.forTable("events").retention(0, RetentionPolicy.DETACH).buffer(2)));
+
+            assertThat(report.shards()).containsOnlyKeys("shard-1", "shard-2");
+            assertThat(report.shards().get("shard-1").results()).singleElement()
+                    .satisfies(result -> assertThat(result.added()).containsExactly(Partition.of("events_20250103")));
+            assertThat(report.failedShards()).containsExactly("shard-2");
+            assertThat(report.shards().get("shard-2").failures()).singleElement()
+                    .satisfies(failure -> assertThat(failure.exception()).isInstanceOf(IllegalStateException.class));
+        }
+
+        @Test
+        void reportsTimedOutShardAsFailed() {
+            when(partitionRepository.findPartitions("events")).thenReturn(List.of(Partition.of("events_20250102")));
+            when(otherShardRepository.findPartitions("events")).thenAnswer(invocation -> {
+                Thread.sleep(Duration.ofSeconds(10));
+                return List.of();
+            });
+
+            var report = new ShardedPartitions(2)
+                    .shardTimeout(Duration.ofMillis(200))
+                    .shard("shard-1", partitions)
+                    .shard("shard-2", new Partitions(otherShardRepository))
+                    .refreshAll(LocalDate.of(2025, 1, 2), List.of(PartitionConfig.forTable("events").retention(0, RetentionPolicy.DETACH).buffer(2)));
+
+            assertThat(report.failedShards()).containsExactly("shard-2");
+            assertThat(report.shards().get("shard-2").failures()).singleElement()
+                    .satisfies(failure -> assertThat(failure.exception()).isInstanceOf(TimeoutException.class));
+        }
+
+        @Test
+        void closesDataSourcesCreatedByFactory() throws Exception {
+            DataSource createdDataSource = mock(DataSource.class, withSettings().extraInterfaces(AutoCloseable.class));
+            DataSource passedDataSource = mock(DataSource.class, withSettings().extraInterfaces(AutoCloseable.class));
+
+            try (var shardedPartitions = new ShardedPartitions(2)) {
+                shardedPartitions.shards(List.of("shard-1"), name -> createdDataSource).shard("shard-2", passedDataSource);
+            }
+
+            verify((AutoCloseable) createdDataSource).close();
+            verify((AutoCloseable) passedDataSource, never()).close();
+        }
+
+        @Test
+        void doesNotCreateDataSourcesForRegisteredShards() {
+            Function<String, DataSource> dataSourceFactory = mock();
+            var shardedPartitions = new ShardedPartitions(2).shard("shard-1", partitions);
+
+            assertThatThrownBy(() -> shardedPartitions.shards(List.of("shard-2", "shard-1"), dataSourceFactory))
+                    .isInstanceOf(IllegalArgumentException.class)
+                    .hasMessage("Shard shard-1 is already registered");
+            assertThatThrownBy(() -> shardedPartitions.shards(List.of("shard-2", "shard-2"), dataSourceFactory))
+                    .isInstanceOf(IllegalArgumentException.class);
+            verifyNoInteractions(dataSourceFactory);
+        }
+
+        @Test
+        void rejectsDuplicateShard() {
+            var shardedPartitions = new ShardedPartitions(2).shard("shard-1", partitions);
+
+            assertThatThrownBy(() -> shardedPartitions.shard("shard-1", partitions)).isInstanceOf(IllegalArgumentException.class);
+        }
+    }
+
+    @Nested
+    class NextChange {
+
+        @Test
+        void returnsBeginningOfNextRange() {
+            var date = LocalDateTime.of(2025, 1, 2, 10, 30);
+
+            assertThat(nextChange(date, PartitionConfig.forTable("events").daily())).isEqualTo(LocalDateTime.of(2025, 1, 3, 0, 0));
+            assertThat(nextChange(date, PartitionConfig.forTable("events").monthly())).isEqualTo(LocalDateTime.of(2025, 2, 1, 0, 0));
+            assertThat(nextChange(date, PartitionConfig.forTable("events").hourly())).isEqualTo(LocalDateTime.of(2025, 1, 2, 11, 0));
+        }
+
+        @Test
+        void returnsDateWhenExpectedPartitionsAreMissing() {
+            var config = PartitionConfig.forTable("events").daily().buffer(3);
+            var date = LocalDateTime.of(2025, 1, 2, 10, 30);
+            when(partitionRepository.findPartitions("events")).thenReturn(List.of(Partition.of("events_20250102"), Partition.of("events_20250103")));
+
+            assertThat(partitions.nextChange(date, config)).isEqualTo(date);
+        }
+
+        @Test
+        void ignoresPartitionsThatAreNotExpected() {
+            var config = PartitionConfig.forTable("events").daily().retention(1, RetentionPolicy.DROP).buffer(1);
+            var date = LocalDateTime.of(2025, 1, 2, 10, 30);
+            when(partitionRepository.findPartitions("events")).thenReturn(List.of(Partition.of("events_20241230"), Partition.of("events_20250101"), Partition.of("events_20250102")));
+
+            assertThat(partitions.nextChange(date, config)).isEqualTo(LocalDateTime.of(2025, 1, 3, 0, 0));
+        }
+
+        @Test
+        void doesNotChangeExpectedPartitionsBeforeNextChange() {
+            var config = PartitionConfig.forTable("events").retention(2, RetentionPolicy.DROP).buffer(3);
+            var date = LocalDateTime.of(2025, 1, 2, 10, 30);
+            var nextChange = nextChange(date, config);
+
+            assertThat(Partitions.expectedPartitions(config, nextChange.minusSeconds(1))).isEqualTo(Partitions.expectedPartitions(config, date));
+            assertThat(Partitions.expectedPartitions(config, nextChange)).isNotEqualTo(Partitions.expectedPartitions(config, date));
+        }
+
+        private LocalDateTime nextChange(LocalDateTime date, PartitionConfig config) {
+            when(partitionRepository.findPartitions(config.tableName())).thenReturn(Partitions.expectedPartitions(config, date));
+            return partitions.nextChange(date, config);
+        }
+    }
+
+    @Nested
+    class Diff {
+
+        @Test
+        void comparesPartitionsByBounds() {
+            var changeset = Partitions.diff(
+                    List.of(Partition.of("events_20250103"), Partition.of("events_20241230"), Partition.of("events_20250101")),
+                    List.of(Partition.of("events_20250101"), Partition.of("events_20250102"), Partition.of("events_20250103")));
+
+            assertThat(changeset.remove()).containsExactly(Partition.of("events_20241230"));
+            assertThat(changeset.add()).containsExactly(Partition.of("events_20250102"));
+        }
+
+        @Test
+        void handlesLargePartitionSets() {
+            var config = PartitionConfig.forTable("events").retention(50_000, RetentionPolicy.DROP).buffer(50_000);
+            var existing = Partitions.expectedPartitions(config, LocalDate.of(2025, 1, 1).atStartOfDay());
+            var expected = Partitions.expectedPartitions(config, LocalDate.of(2025, 1, 11).atStartOfDay());
+
+            var changeset = Partitions.diff(existing, expected);
+
+            assertThat(changeset.remove()).hasSize(10).first().isEqualTo(existing.get(0));
+            assertThat(changeset.add()).hasSize(10).last().isEqualTo(expected.get(expected.size() - 1));
+        }
+    }
+
+    @Nested
+    class RefreshAll {
+
+        @Test
+        void refreshesAllTables() {
+            when(partitionRepository.findPartitions("events")).thenReturn(List.of(Partition.of("events_20250102")));
+            when(partitionRepository.findPartitions("logs")).thenReturn(List.of(Partition.of("logs_202501")));
+
+            var report = partitions.refreshAll(LocalDate.of(2025, 1, 2), List.of(
+                    PartitionConfig.forTable("events").retention(0, RetentionPolicy.DETACH).buffer(2),
+                    PartitionConfig.forTable("logs").monthly().retention(0, RetentionPolicy.DETACH).buffer(2)));
+
+            assertThat(report.hasFailures()).isFalse();
+            assertThat(report.results()).extracting(RefreshResult::tableName).containsExactly("events", "logs");
+            assertThat(report.results().get(0).added()).containsExactly(Partition.of("events_20250103"));
+            assertThat(report.results().get(1).added()).containsExactly(Partition.of("logs_202502"));
+        }
+
+        @Test
+        void doesNotStopOnFailingTable() {
+            when(partitionRepository.findPartitions("broken")).thenThrow(new IllegalStateException("boom"));
+            when(partitionRepository.findPartitions("events")).thenReturn(List.of());
+
+            var report = partitions.refreshAll(LocalDate.of(2025, 1, 2), List.of(
+                    PartitionConfig.forTable("broken").buffer(1),
+                    PartitionConfig.forTable("events").retention(0, RetentionPolicy.DETACH).buffer(1)));
+
+            assertThat(report.hasFailures()).isTrue();
+            assertThat(report.failures()).singleElement().satisfies(failure -> {
+                assertThat(failure.tableName()).isEqualTo("broken");
+                assertThat(failure.exception()).isInstanceOf(IllegalStateException.class);
+            });
+            assertThat(report.results()).singleElement().satisfies(result -> {
+                assertThat(result.tableName()).isEqualTo("events");
+                assertThat(result.added()).containsExactly(Partition.of("events_20250102"));
+            });
+        }
+    }
+}